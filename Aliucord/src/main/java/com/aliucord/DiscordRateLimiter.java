@@ -0,0 +1,163 @@
+/*
+ * This file is part of Aliucord, an Android Discord client mod.
+ * Copyright (c) 2024 Juby210 & Vendicated
+ * Licensed under the Open Software License version 3.0
+ */
+
+package com.aliucord;
+
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Tracks Discord's <a href="https://discord.com/developers/docs/topics/rate-limits">rate limits</a> for requests made via
+ * {@link Http.Request#newDiscordRequest(String, String)} and {@link Http.Request#newDiscordRNRequest(String, String)}.
+ * Requests to a bucket that is exhausted wait until it resets instead of being sent and rejected with 429.
+ */
+final class DiscordRateLimiter {
+    private static final Logger logger = new Logger("RateLimiter");
+    /** Ids that are not top-level resources share the rate limit of their route */
+    private static final Pattern minorIdPattern = Pattern.compile("(?<!/channels|/guilds|/webhooks)/\\d{16,20}");
+
+    private static final class Bucket {
+        /** Requests left until reset, or -1 if unknown */
+        int remaining = -1;
+        long resetAt;
+    }
+
+    /** Amount of routes above which buckets that have reset are dropped, as routes include the ids of top-level resources */
+    private static final int MAX_ROUTES = 256;
+
+    /** Buckets by route. Routes that Discord reports to be in the same bucket share the same instance */
+    private static final Map<String, Bucket> routes = new HashMap<>();
+    /** Buckets by bucket hash and route */
+    private static final Map<String, Bucket> buckets = new HashMap<>();
+    private static volatile long globalResetAt;
+
+    /**
+     * Gets the rate limit route of a request: its method and path with all ids except top-level resources removed
+     *
+     * @param method HTTP method
+     * @param url    Url of the request
+     */
+    static String getRoute(String method, URL url) {
+        return method + " " + minorIdPattern.matcher(url.getPath()).replaceAll("/:id");
+    }
+
+    private static Bucket getBucket(String route) {
+        synchronized (routes) {
+            var bucket = routes.get(route);
+            if (bucket == null) {
+                if (routes.size() >= MAX_ROUTES) evictExpired();
+                routes.put(route, bucket = new Bucket());
+            }
+            return bucket;
+        }
+    }
+
+    /** Drops buckets that have reset, they hold no state a new bucket wouldn't have. Must hold the routes lock */
+    private static void evictExpired() {
+        long now = System.currentTimeMillis();
+        routes.values().removeIf(bucket -> isExpired(bucket, now));
+        buckets.values().removeIf(bucket -> isExpired(bucket, now));
+    }
+
+    private static boolean isExpired(Bucket bucket, long now) {
+        //noinspection SynchronizationOnLocalVariableOrMethodParameter
+        synchronized (bucket) {
+            return now >= bucket.resetAt;
+        }
+    }
+
+    /**
+     * Blocks until a request to the specified route may be sent
+     *
+     * @param route Route of the request, see {@link #getRoute(String, URL)}
+     * @throws InterruptedIOException If the thread was interrupted while waiting
+     */
+    static void acquire(String route) throws InterruptedIOException {
+        try {
+            long global = globalResetAt - System.currentTimeMillis();
+            if (global > 0) Thread.sleep(global);
+
+            var bucket = getBucket(route);
+            //noinspection SynchronizationOnLocalVariableOrMethodParameter
+            synchronized (bucket) {
+                while (true) {
+                    long now = System.currentTimeMillis();
+                    if (bucket.remaining != 0) break;
+                    if (now >= bucket.resetAt) {
+                        bucket.remaining = -1;
+                        break;
+                    }
+                    bucket.wait(bucket.resetAt - now);
+                }
+                if (bucket.remaining > 0) bucket.remaining--;
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting for rate limit of " + route);
+        }
+    }
+
+    /**
+     * Updates the rate limit state of the specified route with the headers of a response
+     *
+     * @param route Route of the request
+     * @param conn  Connection of the response
+     */
+    static void update(String route, HttpURLConnection conn) {
+        if (conn.getHeaderField("X-RateLimit-Global") != null) {
+            long retryAfter = getRetryAfter(conn);
+            if (retryAfter > 0) {
+                globalResetAt = System.currentTimeMillis() + retryAfter;
+                logger.warn("Hit global rate limit, pausing requests for " + retryAfter + "ms");
+            }
+            return;
+        }
+
+        var hash = conn.getHeaderField("X-RateLimit-Bucket");
+        var remaining = conn.getHeaderField("X-RateLimit-Remaining");
+        var resetAfter = conn.getHeaderField("X-RateLimit-Reset-After");
+        if (hash == null || remaining == null || resetAfter == null) return;
+
+        Bucket bucket;
+        synchronized (routes) {
+            // Buckets are shared across routes with the same hash, but separately for each top-level resource
+            var key = hash + ":" + route.substring(route.indexOf(' ') + 1).replaceAll("/(?!\\d)[^/]+", "");
+            bucket = buckets.get(key);
+            if (bucket == null) buckets.put(key, bucket = getBucket(route));
+            routes.put(route, bucket);
+        }
+
+        try {
+            //noinspection SynchronizationOnLocalVariableOrMethodParameter
+            synchronized (bucket) {
+                bucket.remaining = Integer.parseInt(remaining);
+                bucket.resetAt = System.currentTimeMillis() + (long) (Double.parseDouble(resetAfter) * 1000);
+                bucket.notifyAll();
+            }
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid rate limit headers for " + route);
+        }
+    }
+
+    /**
+     * Gets the time to wait before retrying a rate limited request
+     *
+     * @param conn Connection of the 429 response
+     * @return Time to wait in milliseconds, or -1 if the response has no Retry-After header
+     */
+    static long getRetryAfter(HttpURLConnection conn) {
+        var retryAfter = conn.getHeaderField("Retry-After");
+        if (retryAfter == null) return -1;
+        try {
+            return (long) (Double.parseDouble(retryAfter) * 1000);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -6,6 +6,8 @@
 
 package com.aliucord;
 
+import android.os.Looper;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
@@ -13,6 +15,8 @@ import com.aliucord.utils.*;
 import com.discord.utilities.analytics.AnalyticSuperProperties;
 import com.discord.utilities.rest.RestAPI;
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import java.io.*;
 import java.lang.reflect.Type;
@@ -21,10 +25,15 @@ import java.net.*;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
 
 /** Http Utilities */
 @SuppressWarnings({ "unused", "UnusedReturnValue" })
 public class Http {
+    private static final Logger logger = new Logger("Http");
+
     public static class HttpException extends IOException {
         /** The url of this request */
         public final URL url;
@@ -76,6 +85,22 @@ public class Http {
         }
     }
 
+    /**
+     * Handles the response of an asynchronous request on the I/O thread it was executed on
+     *
+     * @see Request#executeAsync(ResponseHandler)
+     */
+    public interface ResponseHandler<T> {
+        /**
+         * Handles the response, for example by deserializing it
+         *
+         * @param res The response
+         * @return The result the future of the request completes with
+         * @throws IOException If an I/O exception occurs
+         */
+        T handle(@NonNull Response res) throws IOException;
+    }
+
     /** QueryString Builder */
     public static class QueryBuilder {
         private final StringBuilder sb;
@@ -250,8 +275,32 @@ public class Http {
 
     /** Request Builder */
     public static class Request implements Closeable {
-        /** The connection of this Request */
-        public final HttpURLConnection conn;
+        /**
+         * The connection of this Request. Replaced with a new connection whenever the request is retried.
+         * Volatile, as the request may be aborted from another thread
+         */
+        public volatile HttpURLConnection conn;
+
+        private boolean useCache;
+        /** Url this request is cached under. Captured before connecting, as following redirects changes the url of the connection */
+        String cacheUrl;
+        /** The cached response used to revalidate this request, if any. Closed with this request */
+        @Nullable
+        HttpCache.Hit cacheHit;
+        /** Whether this request was sent */
+        private boolean executed;
+        /** Whether this request was cancelled, in which case it must not be retried */
+        private volatile boolean aborted;
+
+        private int maxRetries;
+        /** Rate limit route of this request, if it is a Discord request */
+        @Nullable
+        private String rateLimitRoute;
+        /** Headers and body of this request, kept to send it again when retrying. Null if this request can't be retried */
+        @Nullable
+        private Map<String, List<String>> retryHeaders;
+        @Nullable
+        private byte[] retryBody;
 
         /**
          * Builds a GET request with the specified QueryBuilder
@@ -321,13 +370,210 @@ public class Http {
             return this;
         }
 
+        /**
+         * Sets how often this request is retried if it fails. Requests are retried with a jittered exponential backoff
+         * when they are rate limited (429), and, for idempotent methods, on connection errors and server errors (5xx).
+         * Requests with a streamed body, like multipart forms, are never retried.
+         * Discord requests are retried up to 3 times by default.
+         * Requests executed on the main thread are never retried and don't wait for rate limits, so they can't freeze the UI.
+         *
+         * @param maxRetries Maximum amount of retries, 0 to disable
+         * @return self
+         */
+        public Request setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * Sets whether the response of this request should be stored in the on-disk {@link HttpCache}.
+         * Cached responses are revalidated with the server and only downloaded again if they changed.
+         * Only affects GET requests.
+         *
+         * @param useCache Whether to use the cache
+         * @return self
+         */
+        public Request setUseCache(boolean useCache) {
+            this.useCache = useCache;
+            return this;
+        }
+
+        /** Whether this request uses the on-disk {@link HttpCache} */
+        boolean isCacheable() {
+            return useCache && conn.getRequestMethod().equals("GET");
+        }
+
         /**
          * Execute the request
          *
          * @return A response object
          */
         public Response execute() throws IOException {
-            return new Response(this);
+            if (isCacheable()) {
+                cacheUrl = conn.getURL().toString();
+                cacheHit = HttpCache.get(cacheUrl);
+                if (cacheHit != null) {
+                    if (cacheHit.etag != null) setHeader("If-None-Match", cacheHit.etag);
+                    if (cacheHit.lastModified != null) setHeader("If-Modified-Since", cacheHit.lastModified);
+                }
+            }
+            executed = true;
+            // Waiting on the main thread would freeze the UI
+            boolean mayWait = Looper.myLooper() != Looper.getMainLooper();
+            if (!mayWait) maxRetries = 0;
+            if (maxRetries > 0 && retryHeaders == null && !conn.getDoOutput()) snapshotForRetry(null);
+
+            for (int attempt = 0; ; attempt++) {
+                if (rateLimitRoute != null && mayWait) DiscordRateLimiter.acquire(rateLimitRoute);
+
+                Response res;
+                try {
+                    res = new Response(this);
+                } catch (IOException ex) {
+                    if (!canRetry(attempt) || !isIdempotent()) throw ex;
+                    logger.warn("Retrying " + conn.getRequestMethod() + " " + conn.getURL() + " after error: " + ex.getMessage());
+                    sleep(getBackoff(attempt));
+                    reopen();
+                    continue;
+                }
+                if (rateLimitRoute != null) DiscordRateLimiter.update(rateLimitRoute, conn);
+
+                long delay = -1;
+                if (res.statusCode == 429) {
+                    delay = DiscordRateLimiter.getRetryAfter(conn);
+                    if (delay < 0) delay = getBackoff(attempt);
+                    // Don't hold up the caller for long rate limits, let it decide what to do instead
+                    if (delay > MAX_RETRY_DELAY) delay = -1;
+                } else if (res.statusCode >= 500 && isIdempotent()) {
+                    delay = getBackoff(attempt);
+                }
+                if (delay < 0 || !canRetry(attempt)) return res;
+
+                logger.warn("Retrying " + conn.getRequestMethod() + " " + conn.getURL() + " in " + delay + "ms after " + res.statusCode);
+                sleep(delay);
+                reopen();
+            }
+        }
+
+        private static final long MAX_RETRY_DELAY = 30_000;
+
+        private boolean canRetry(int attempt) {
+            return attempt < maxRetries && retryHeaders != null && !aborted;
+        }
+
+        private boolean isIdempotent() {
+            switch (conn.getRequestMethod()) {
+                case "GET":
+                case "HEAD":
+                case "PUT":
+                case "DELETE":
+                case "OPTIONS":
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        /** Exponential backoff with jitter, starting at 500ms and capped at 10 seconds */
+        private static long getBackoff(int attempt) {
+            long base = Math.min(500L << Math.min(attempt, 5), 10_000);
+            return base / 2 + ThreadLocalRandom.current().nextLong(base);
+        }
+
+        private static void sleep(long millis) throws InterruptedIOException {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while waiting to retry request");
+            }
+        }
+
+        /** Remembers the headers and body of this request so it can be retried. Must be called before connecting */
+        private void snapshotForRetry(@Nullable byte[] body) {
+            try {
+                retryHeaders = new HashMap<>(conn.getRequestProperties());
+                retryBody = body;
+            } catch (IllegalStateException ignored) {
+                // Already connected, for example because the body was written manually
+            }
+        }
+
+        /** Replaces the connection with a fresh one with the same configuration, for retrying */
+        private void reopen() throws IOException {
+            var old = conn;
+            // Release the previous attempt before opening the next one
+            old.disconnect();
+            var next = (HttpURLConnection) old.getURL().openConnection();
+            next.setRequestMethod(old.getRequestMethod());
+            next.setConnectTimeout(old.getConnectTimeout());
+            next.setReadTimeout(old.getReadTimeout());
+            next.setInstanceFollowRedirects(old.getInstanceFollowRedirects());
+            for (var header : Objects.requireNonNull(retryHeaders).entrySet()) {
+                if (header.getKey() == null) continue;
+                for (var value : header.getValue()) next.addRequestProperty(header.getKey(), value);
+            }
+            conn = next;
+            // An abort racing with the swap may only have disconnected the old connection
+            if (aborted) {
+                next.disconnect();
+                throw new IOException("Request was aborted");
+            }
+            if (retryBody != null) {
+                next.setDoOutput(true);
+                try (var out = next.getOutputStream()) {
+                    out.write(retryBody);
+                }
+            }
+        }
+
+        /**
+         * Execute the request asynchronously on Aliucord's bounded I/O executor.
+         * Cancelling the returned future aborts the request. Remember to close the response once you're done with it
+         *
+         * @return A future completing with the response
+         */
+        @NonNull
+        public CompletableFuture<Response> executeAsync() {
+            return executeAsync(res -> res);
+        }
+
+        /**
+         * Execute the request asynchronously on Aliucord's bounded I/O executor and handle the response on the same thread.
+         * The request is closed once the handler returns, unless the handler returns the response itself.
+         * Cancelling the returned future aborts the request.
+         * <p>
+         * To avoid doing work for a page that is no longer visible, pass the future to
+         * {@link com.aliucord.fragments.SettingsPage#cancelOnDestroy(java.util.concurrent.Future)}.
+         *
+         * @param handler Handler turning the response into the result, for example <code>res -> res.json(MyType.class)</code>
+         * @return A future completing with the result of the handler
+         */
+        @NonNull
+        public <T> CompletableFuture<T> executeAsync(@NonNull ResponseHandler<T> handler) {
+            var future = new CompletableFuture<T>();
+            // Disconnecting aborts any blocking read or write of the request
+            future.whenComplete((res, th) -> {
+                if (th instanceof CancellationException) {
+                    aborted = true;
+                    conn.disconnect();
+                }
+            });
+
+            HttpExecutor.execute(conn.getURL().getHost(), () -> {
+                if (future.isDone()) return;
+                T result;
+                try {
+                    var res = execute();
+                    result = handler.handle(res);
+                    if (result != res) close();
+                } catch (Throwable th) {
+                    close();
+                    future.completeExceptionally(th);
+                    return;
+                }
+                if (!future.complete(result)) close();
+            });
+            return future;
         }
 
         /**
@@ -356,6 +602,7 @@ public class Http {
 
             setHeader("Content-Length", Integer.toString(bytes.length));
             conn.setDoOutput(true);
+            if (maxRetries > 0) snapshotForRetry(bytes);
             try (OutputStream out = conn.getOutputStream()) {
                 out.write(bytes, 0, bytes.length);
                 out.flush();
@@ -455,10 +702,30 @@ public class Http {
             }
         }
 
-        /** Closes this request */
+        /**
+         * Closes this request. If it was sent, its connection is released back to the pool so it can be reused by following requests
+         */
         @Override
         public void close() {
-            conn.disconnect();
+            if (cacheHit != null) try {
+                cacheHit.close();
+            } catch (IOException ignored) {
+            }
+            var conn = this.conn;
+            if (!executed) {
+                conn.disconnect();
+                return;
+            }
+            // Closing the body instead of disconnecting keeps the connection alive
+            try {
+                conn.getInputStream().close();
+            } catch (IOException ex) {
+                try (var es = conn.getErrorStream()) {
+                    if (es == null) conn.disconnect();
+                } catch (IOException ignored) {
+                    conn.disconnect();
+                }
+            }
         }
 
         /**
@@ -489,7 +756,7 @@ public class Http {
          * @throws IOException If an I/O exception occurs
          */
         public static Request newDiscordRequest(String route, String method) throws IOException {
-            var req = new Request(getDiscordRoute(route), method);
+            var req = newRateLimitedRequest(route, method);
             var headersProvider = RestAPI.AppHeadersProvider.INSTANCE;
             req.setHeader("User-Agent", headersProvider.getUserAgent())
                 .setHeader("X-Super-Properties", AnalyticSuperProperties.INSTANCE.getSuperPropertiesStringBase64())
@@ -528,7 +795,7 @@ public class Http {
          * @throws IOException If an I/O exception occurs
          */
         public static Request newDiscordRNRequest(String route, String method) throws IOException {
-            var req = new Request(getDiscordRoute(route), method);
+            var req = newRateLimitedRequest(route, method);
             var headersProvider = RestAPI.AppHeadersProvider.INSTANCE;
             req.setHeader("User-Agent", RNSuperProperties.userAgent)
                 .setHeader("X-Super-Properties", RNSuperProperties.getSuperPropertiesBase64())
@@ -540,6 +807,13 @@ public class Http {
             return req;
         }
 
+        private static Request newRateLimitedRequest(String route, String method) throws IOException {
+            var req = new Request(getDiscordRoute(route), method);
+            req.rateLimitRoute = DiscordRateLimiter.getRoute(req.conn.getRequestMethod(), req.conn.getURL());
+            req.maxRetries = 3;
+            return req;
+        }
+
         private static String getDiscordRoute(String route) {
             return route.startsWith("http") ? route : "https://discord.com/api/v9" + route;
         }
@@ -552,6 +826,9 @@ public class Http {
         public final int statusCode;
         /** The <a href="https://developer.mozilla.org/en-US/docs/Web/HTTP/Status">status message</a> of this response */
         public final String statusMessage;
+        /** Cached body served instead of the response body because the server responded with 304 Not Modified */
+        @Nullable
+        private final InputStream cachedBody;
 
         /**
          * Construct a Response
@@ -561,8 +838,21 @@ public class Http {
          */
         public Response(Request req) throws IOException {
             this.req = req;
-            statusCode = req.conn.getResponseCode();
-            statusMessage = req.conn.getResponseMessage();
+            int code = req.conn.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED && req.cacheHit != null) {
+                cachedBody = req.cacheHit.body;
+                statusCode = HttpURLConnection.HTTP_OK;
+                statusMessage = "OK";
+            } else {
+                cachedBody = null;
+                statusCode = code;
+                statusMessage = req.conn.getResponseMessage();
+            }
+        }
+
+        /** Whether the body of this response was served from the on-disk {@link HttpCache} */
+        public boolean fromCache() {
+            return cachedBody != null;
         }
 
         /** Whether the request was successful (status code 2xx) */
@@ -607,7 +897,12 @@ public class Http {
          * @return Response Object
          */
         public <T> T json(Gson gson, Type type) throws IOException {
-            return GsonUtils.fromJson(gson, text(), type);
+            try (var reader = jsonReader()) {
+                T value = GsonUtils.fromJson(gson, reader, type);
+                // The reader is lenient like Gson's own, so make sure nothing but whitespace follows the value
+                if (reader.peek() != JsonToken.END_DOCUMENT) throw new IOException("JSON document was not fully consumed");
+                return value;
+            }
         }
 
         /**
@@ -628,7 +923,64 @@ public class Http {
          * @return Response Object
          */
         public <T> T json(Gson gson, Class<T> type) throws IOException {
-            return GsonUtils.fromJson(gson, text(), type);
+            return json(gson, (Type) type);
+        }
+
+        /**
+         * Lazily deserializes a json array response element by element, without reading the whole response into memory.
+         * Remember to close the returned iterator
+         *
+         * @param type Type of the array elements
+         * @return Iterator over the elements of the array
+         */
+        public <T> JsonArrayIterator<T> jsonArray(Type type) throws IOException {
+            return jsonArray(GsonUtils.getGson(), type);
+        }
+
+        /**
+         * Lazily deserializes a json array response element by element, without reading the whole response into memory.
+         * Remember to close the returned iterator
+         *
+         * @param gson Gson instance
+         * @param type Type of the array elements
+         * @return Iterator over the elements of the array
+         */
+        public <T> JsonArrayIterator<T> jsonArray(Gson gson, Type type) throws IOException {
+            return new JsonArrayIterator<>(gson, type, jsonReader());
+        }
+
+        /**
+         * Lazily deserializes a json array response element by element, without reading the whole response into memory.
+         * Remember to close the returned iterator
+         *
+         * @param type Class of the array elements
+         * @return Iterator over the elements of the array
+         */
+        public <T> JsonArrayIterator<T> jsonArray(Class<T> type) throws IOException {
+            return jsonArray(GsonUtils.getGson(), (Type) type);
+        }
+
+        /**
+         * Lazily deserializes a json array response element by element, without reading the whole response into memory.
+         * Remember to close the returned iterator
+         *
+         * @param gson Gson instance
+         * @param type Class of the array elements
+         * @return Iterator over the elements of the array
+         */
+        public <T> JsonArrayIterator<T> jsonArray(Gson gson, Class<T> type) throws IOException {
+            return jsonArray(gson, (Type) type);
+        }
+
+        /**
+         * Get a {@link JsonReader} reading the response body, for manually parsing the response token by token
+         *
+         * @return JsonReader. Remember to close it
+         */
+        public JsonReader jsonReader() throws IOException {
+            var reader = new JsonReader(new InputStreamReader(stream(), StandardCharsets.UTF_8));
+            reader.setLenient(true);
+            return reader;
         }
 
         /**
@@ -638,7 +990,18 @@ public class Http {
          */
         public InputStream stream() throws IOException {
             assertOk();
-            return req.conn.getInputStream();
+            if (cachedBody != null) return cachedBody;
+
+            var is = req.conn.getInputStream();
+            if (req.isCacheable() && statusCode == HttpURLConnection.HTTP_OK) {
+                var etag = req.conn.getHeaderField("ETag");
+                var lastModified = req.conn.getHeaderField("Last-Modified");
+                var cacheControl = req.conn.getHeaderField("Cache-Control");
+                boolean noStore = cacheControl != null && cacheControl.contains("no-store");
+                if ((etag != null || lastModified != null) && !noStore && req.conn.getContentLengthLong() <= HttpCache.getMaxSize())
+                    return HttpCache.wrap(req.cacheUrl, etag, lastModified, is);
+            }
+            return is;
         }
 
         /**
@@ -719,6 +1082,65 @@ public class Http {
         }
     }
 
+    /**
+     * Iterator over the elements of a json array response, deserializing each element only once it is requested.
+     * Obtained via {@link Response#jsonArray(Gson, Type)}
+     */
+    public static class JsonArrayIterator<T> implements Iterator<T>, Iterable<T>, Closeable {
+        private final Gson gson;
+        private final Type type;
+        private final JsonReader reader;
+        private boolean done;
+
+        private JsonArrayIterator(Gson gson, Type type, JsonReader reader) throws IOException {
+            this.gson = gson;
+            this.type = type;
+            this.reader = reader;
+            try {
+                reader.beginArray();
+            } catch (IOException | RuntimeException ex) {
+                reader.close();
+                throw ex;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (done) return false;
+            try {
+                if (reader.peek() != JsonToken.END_ARRAY) return true;
+                reader.endArray();
+                done = true;
+                return false;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            try {
+                return GsonUtils.fromJson(gson, reader, type);
+            } catch (RuntimeException ex) {
+                if (ex.getCause() instanceof IOException) throw new UncheckedIOException((IOException) ex.getCause());
+                throw ex;
+            }
+        }
+
+        @NonNull
+        @Override
+        public Iterator<T> iterator() {
+            return this;
+        }
+
+        /** Closes the underlying response stream. Elements that were not read yet are discarded */
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
     /**
      * Send a simple GET request
      *
@@ -747,8 +1169,9 @@ public class Http {
      * @return Response Object
      */
     public static <T> T simpleJsonGet(String url, Type schema) throws IOException {
-        String res = simpleGet(url);
-        return GsonUtils.fromJson(GsonUtils.getGson(), res, schema);
+        try (var req = new Request(url, "GET")) {
+            return req.execute().json(schema);
+        }
     }
 
     /**
@@ -782,8 +1205,9 @@ public class Http {
      * @return Response deserialized into the provided Class
      */
     public static <T> T simpleJsonPost(String url, String body, Type schema) throws IOException {
-        String res = simplePost(url, body);
-        return GsonUtils.fromJson(GsonUtils.getGson(), res, schema);
+        try (var req = new Request(url, "POST")) {
+            return req.executeWithBody(body).json(schema);
+        }
     }
 
     // This is just here for proper Generics so you can do simpleJsonPost(url, body, myClass).myMethod() without having to cast
@@ -809,7 +1233,9 @@ public class Http {
      * @return Response deserialized into the provided Class
      */
     public static <T> T simpleJsonPost(String url, Object body, Type schema) throws IOException {
-        return new Request(url).executeWithJson(body).json(schema);
+        try (var req = new Request(url)) {
+            return req.executeWithJson(body).json(schema);
+        }
     }
 
     // This is just here for proper Generics so you can do simpleJsonPost(url, body, myClass).myMethod() without having to cast
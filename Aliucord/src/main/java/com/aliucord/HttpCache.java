@@ -0,0 +1,356 @@
+/*
+ * This file is part of Aliucord, an Android Discord client mod.
+ * Copyright (c) 2024 Juby210 & Vendicated
+ * Licensed under the Open Software License version 3.0
+ */
+
+package com.aliucord;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.aliucord.utils.GsonUtils;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+import kotlin.io.FilesKt;
+
+/**
+ * On-disk cache for GET responses of {@link Http.Request}s that opted in via {@link Http.Request#setUseCache(boolean)}.
+ * Cached responses are revalidated using their ETag / Last-Modified headers and served from disk if the server
+ * responds with 304 Not Modified. Once the cache exceeds {@link #getMaxSize()}, the least recently used entries are evicted.
+ */
+@SuppressWarnings("unused")
+public final class HttpCache {
+    private static final Logger logger = new Logger("HttpCache");
+
+    /** A cached response */
+    static final class Entry {
+        String url;
+        @Nullable String etag;
+        @Nullable String lastModified;
+        long size;
+
+        transient String key;
+
+        File getBody() {
+            return new File(getDir(), key + ".body");
+        }
+
+        File getMeta() {
+            return new File(getDir(), key + ".json");
+        }
+    }
+
+    /**
+     * A cached response looked up for a request. Its body is opened during the lookup, so it can still be read
+     * if the entry is evicted or replaced before the server confirms it is up to date
+     */
+    static final class Hit implements Closeable {
+        @Nullable final String etag;
+        @Nullable final String lastModified;
+        final InputStream body;
+
+        Hit(Entry entry, InputStream body) {
+            etag = entry.etag;
+            lastModified = entry.lastModified;
+            this.body = body;
+        }
+
+        @Override
+        public void close() throws IOException {
+            body.close();
+        }
+    }
+
+    private static long maxSize = 10 * 1024 * 1024; // 10 MB
+    private static File dir;
+    /** Entries in least recently used order */
+    private static LinkedHashMap<String, Entry> entries;
+    private static long size;
+
+    /** Gets the maximum size of the cache in bytes */
+    public static synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the maximum size of the cache. Entries are evicted immediately if the cache is bigger than the new size
+     *
+     * @param bytes The new maximum size, in bytes
+     */
+    public static synchronized void setMaxSize(long bytes) {
+        maxSize = bytes;
+        if (entries != null) trim();
+    }
+
+    /** Gets the current size of the cache in bytes */
+    public static synchronized long getSize() {
+        getEntries();
+        return size;
+    }
+
+    /** Removes all cached responses */
+    public static synchronized void clear() {
+        for (var entry : getEntries().values()) delete(entry);
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Removes the cached response of the specified url
+     *
+     * @param url Url of the request
+     */
+    public static synchronized void remove(@NonNull String url) {
+        var entry = getEntries().remove(hash(url));
+        if (entry != null) {
+            size -= entry.size;
+            delete(entry);
+        }
+    }
+
+    private static File getDir() {
+        if (dir == null) dir = new File(Utils.getAppContext().getCacheDir(), "aliucord-http");
+        return dir;
+    }
+
+    private static LinkedHashMap<String, Entry> getEntries() {
+        if (entries != null) return entries;
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        var dir = getDir();
+        if (!dir.exists() && !dir.mkdirs()) {
+            logger.warn("Failed to create http cache directory " + dir.getAbsolutePath());
+            return entries;
+        }
+
+        var files = dir.listFiles();
+        if (files == null) return entries;
+        var loaded = new ArrayList<Entry>();
+        for (var file : files) {
+            var name = file.getName();
+            if (!name.endsWith(".json")) {
+                // Bodies are only kept if their metadata is valid, leftover temp files are dropped right away
+                if (name.endsWith(".tmp")) //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                continue;
+            }
+            try {
+                var entry = GsonUtils.fromJson(GsonUtils.getGson(), FilesKt.readText(file, StandardCharsets.UTF_8), Entry.class);
+                entry.key = name.substring(0, name.length() - 5);
+                if (entry.url == null || entry.getBody().length() != entry.size) throw new IOException("Cache entry is incomplete");
+                loaded.add(entry);
+            } catch (Throwable e) {
+                logger.warn("Dropping invalid http cache entry " + name);
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                //noinspection ResultOfMethodCallIgnored
+                new File(dir, name.substring(0, name.length() - 5) + ".body").delete();
+            }
+        }
+
+        // Bodies are touched whenever they are served, so their modification time is the last access time
+        Collections.sort(loaded, (a, b) -> Long.compare(a.getBody().lastModified(), b.getBody().lastModified()));
+        for (var entry : loaded) {
+            entries.put(entry.key, entry);
+            size += entry.size;
+        }
+        trim();
+        return entries;
+    }
+
+    /**
+     * Gets the cached response of the specified url. The caller has to close it
+     *
+     * @param url Url of the request
+     * @return The cached response with its body opened, or null if this url is not cached
+     */
+    @Nullable
+    static synchronized Hit get(@NonNull String url) {
+        var entry = getEntries().get(hash(url));
+        if (entry == null || !url.equals(entry.url)) return null;
+        InputStream body;
+        try {
+            body = new FileInputStream(entry.getBody());
+        } catch (FileNotFoundException e) {
+            remove(url);
+            return null;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        entry.getBody().setLastModified(System.currentTimeMillis());
+        return new Hit(entry, body);
+    }
+
+    /**
+     * Wraps the body of a response so it is written to the cache while it is being read.
+     * The entry is only committed once the body was read completely.
+     *
+     * @param url          Url of the request
+     * @param etag         ETag header of the response
+     * @param lastModified Last-Modified header of the response
+     * @param is           Body of the response
+     * @return The wrapped stream, or the original stream if the response can't be cached
+     */
+    @NonNull
+    static InputStream wrap(@NonNull String url, @Nullable String etag, @Nullable String lastModified, @NonNull InputStream is) {
+        var entry = new Entry();
+        entry.url = url;
+        entry.etag = etag;
+        entry.lastModified = lastModified;
+        entry.key = hash(url);
+
+        try {
+            var dir = getDir();
+            if (!dir.exists() && !dir.mkdirs()) return is;
+            return new CachingInputStream(is, entry, File.createTempFile(entry.key, ".tmp", dir));
+        } catch (IOException e) {
+            logger.warn("Failed to create http cache entry for " + url);
+            return is;
+        }
+    }
+
+    private static synchronized void commit(Entry entry, File tmp) {
+        var previous = getEntries().remove(entry.key);
+        if (previous != null) size -= previous.size;
+
+        try {
+            if (!tmp.renameTo(entry.getBody())) throw new IOException("Failed to rename temp file");
+            FilesKt.writeText(entry.getMeta(), GsonUtils.toJson(GsonUtils.getGson(), entry), StandardCharsets.UTF_8);
+        } catch (Throwable e) {
+            logger.error("Failed to save http cache entry for " + entry.url, e);
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            delete(entry);
+            return;
+        }
+
+        entries.put(entry.key, entry);
+        size += entry.size;
+        trim();
+    }
+
+    private static void trim() {
+        var it = entries.values().iterator();
+        while (size > maxSize && it.hasNext()) {
+            var entry = it.next();
+            it.remove();
+            size -= entry.size;
+            delete(entry);
+        }
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private static void delete(Entry entry) {
+        entry.getMeta().delete();
+        entry.getBody().delete();
+    }
+
+    private static String hash(String url) {
+        try {
+            var md = MessageDigest.getInstance("SHA-1");
+            return String.format("%040x", new BigInteger(1, md.digest(url.getBytes(StandardCharsets.UTF_8))));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException("Failed to retrieve SHA-1 MessageDigest instance", ex);
+        }
+    }
+
+    /** Copies everything that is read into a temp file and commits it to the cache once the end of the stream is reached */
+    private static final class CachingInputStream extends FilterInputStream {
+        private final Entry entry;
+        private final File tmp;
+        private OutputStream os;
+
+        CachingInputStream(InputStream in, Entry entry, File tmp) throws FileNotFoundException {
+            super(in);
+            this.entry = entry;
+            this.tmp = tmp;
+            os = new BufferedOutputStream(new FileOutputStream(tmp));
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) finish();
+            else write(new byte[] { (byte) b }, 0, 1);
+            return b;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n == -1) finish();
+            else write(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes still have to end up in the cache
+            var buf = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buf, 0, (int) Math.min(buf.length, n - skipped));
+                if (read == -1) break;
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void write(byte[] b, int off, int len) {
+            if (os == null) return;
+            try {
+                os.write(b, off, len);
+                entry.size += len;
+                if (entry.size > getMaxSize()) abort();
+            } catch (IOException e) {
+                abort();
+            }
+        }
+
+        private void finish() {
+            if (os == null) return;
+            try {
+                os.close();
+                os = null;
+                commit(entry, tmp);
+            } catch (IOException e) {
+                abort();
+            }
+        }
+
+        private void abort() {
+            if (os == null) return;
+            try {
+                os.close();
+            } catch (IOException ignored) {
+            }
+            os = null;
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Consumers like JsonReader may stop right after the last token, so read whatever is left to complete the entry
+            if (os != null) try {
+                var buf = new byte[8192];
+                //noinspection StatementWithEmptyBody
+                while (os != null && read(buf, 0, buf.length) != -1) ;
+            } catch (IOException ignored) {
+            }
+            abort();
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is part of Aliucord, an Android Discord client mod.
+ * Copyright (c) 2024 Juby210 & Vendicated
+ * Licensed under the Open Software License version 3.0
+ */
+
+package com.aliucord;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded executor running asynchronous {@link Http.Request}s. At most {@link #MAX_THREADS} requests run at once,
+ * and at most {@link #MAX_PER_HOST} of those go to the same host. Further requests are queued per host and run in order
+ * once a slot frees up, so a burst of requests to one host can't starve requests to other hosts.
+ */
+final class HttpExecutor {
+    static final int MAX_THREADS = 8;
+    static final int MAX_PER_HOST = 4;
+
+    private static final class Host {
+        int running;
+        final Queue<Runnable> pending = new ArrayDeque<>();
+    }
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+        MAX_THREADS, MAX_THREADS,
+        30, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(),
+        r -> {
+            var thread = new Thread(r, "Aliucord Http #" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    );
+    private static final Map<String, Host> hosts = new HashMap<>();
+
+    static {
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs the task once the host has a free slot
+     *
+     * @param host Host the task sends its request to
+     * @param task The task
+     */
+    static void execute(String host, Runnable task) {
+        synchronized (hosts) {
+            var h = hosts.get(host);
+            if (h == null) hosts.put(host, h = new Host());
+            if (h.running >= MAX_PER_HOST) {
+                h.pending.add(task);
+                return;
+            }
+            h.running++;
+        }
+        pool.execute(() -> run(host, task));
+    }
+
+    private static void run(String host, Runnable task) {
+        try {
+            task.run();
+        } finally {
+            Runnable next;
+            synchronized (hosts) {
+                var h = Objects.requireNonNull(hosts.get(host));
+                next = h.pending.poll();
+                if (next == null && --h.running == 0) hosts.remove(host);
+            }
+            if (next != null) pool.execute(() -> run(host, next));
+        }
+    }
+}
@@ -8,6 +8,7 @@ package com.aliucord;
 
 import android.Manifest;
 import android.annotation.SuppressLint;
+import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
@@ -86,15 +87,25 @@ public final class Main {
         if (preInitialized) return;
         preInitialized = true;
 
+        StartupProfiler.recordInjector();
+        var span = StartupProfiler.begin("preInit");
+
         Utils.appActivity = activity;
 
         if (checkPermissions(activity)) preInitWithPermissions(activity);
 
-        Patcher.addPatch(AppActivity.class, "onCreate", new Class<?>[]{ Bundle.class }, new Hook(param ->
+        Patcher.addFusedPatch(AppActivity.class, "onCreate", new Class<?>[]{ Bundle.class }, new Hook(param ->
             Utils.appActivity = (AppActivity) param.thisObject));
 
-        Patcher.addPatch(WidgetChatList.class.getDeclaredConstructor(), new Hook(param ->
+        Patcher.addFusedPatch(WidgetChatList.class.getDeclaredConstructor(), new Hook(param ->
             Utils.widgetChatList = (WidgetChatList) param.thisObject));
+
+        // Settings are written with a delay, so make sure they hit the disk before the app may be killed
+        var flushSettings = new Hook(param -> SettingsUtilsJSON.flushAllAsync());
+        Patcher.addFusedPatch(Activity.class, "onPause", new Class<?>[0], flushSettings);
+        Patcher.addFusedPatch(Activity.class, "onStop", new Class<?>[0], flushSettings);
+
+        StartupProfiler.end(span);
     }
 
     private static void preInitWithPermissions(AppCompatActivity activity) {
@@ -112,7 +123,10 @@ public final class Main {
         if (initialized) return;
         initialized = true;
 
-        Patcher.addPatch(WidgetSettings.class, "onViewBound", new Class<?>[]{ View.class }, new Hook(param -> {
+        var span = StartupProfiler.begin("init");
+        var patchesSpan = StartupProfiler.begin("init.patches");
+
+        Patcher.addFusedPatch(WidgetSettings.class, "onViewBound", new Class<?>[]{ View.class }, new Hook(param -> {
             ViewGroup layout = Utils.nestedChildAt((ViewGroup) param.args[0], 1, 0);
             Context context = layout.getContext();
 
@@ -161,12 +175,12 @@ public final class Main {
 
         // Patch to repair built-in emotes is needed because installer doesn't recompile resources,
         // so they stay in package com.discord instead of apk package name
-        Patcher.addPatch(ModelEmojiUnicode.class, "getImageUri", new Class<?>[]{ String.class, Context.class },
+        Patcher.addFusedPatch(ModelEmojiUnicode.class, "getImageUri", new Class<?>[]{ String.class, Context.class },
             new InsteadHook(param -> "res:///" + Utils.getResId("emoji_" + param.args[0], "raw"))
         );
 
         // Patch to fix crash when displaying newer AutoMod embed types like "Quarantined a member at username update"
-        Patcher.addPatch(WidgetChatListAdapterItemAutoModSystemMessageEmbed.class, "onConfigure", new Class<?>[]{ int.class, ChatListEntry.class },
+        Patcher.addFusedPatch(WidgetChatListAdapterItemAutoModSystemMessageEmbed.class, "onConfigure", new Class<?>[]{ int.class, ChatListEntry.class },
             new PreHook(param -> {
                 try {
                     var autoModEntry = (AutoModSystemMessageEmbedEntry) param.args[1];
@@ -186,7 +200,7 @@ public final class Main {
         );
 
         // Patch to allow changelogs without media
-        Patcher.addPatch(WidgetChangeLog.class, "configureMedia", new Class<?>[]{ String.class }, new PreHook(param -> {
+        Patcher.addFusedPatch(WidgetChangeLog.class, "configureMedia", new Class<?>[]{ String.class }, new PreHook(param -> {
             WidgetChangeLog _this = (WidgetChangeLog) param.thisObject;
             String media = _this.getMostRecentIntent().getStringExtra("INTENT_EXTRA_VIDEO");
 
@@ -199,7 +213,7 @@ public final class Main {
         }));
 
         // Patch for custom footer actions
-        Patcher.addPatch(WidgetChangeLog.class, "configureFooter", new Class<?>[0], new PreHook(param -> {
+        Patcher.addFusedPatch(WidgetChangeLog.class, "configureFooter", new Class<?>[0], new PreHook(param -> {
             WidgetChangeLog _this = (WidgetChangeLog) param.thisObject;
             WidgetChangeLogBinding binding = WidgetChangeLog.access$getBinding$p(_this);
 
@@ -237,7 +251,7 @@ public final class Main {
             Field debugItemBinding = c.getDeclaredField("binding");
             debugItemBinding.setAccessible(true);
 
-            Patcher.addPatch(c, "onConfigure", new Class<?>[]{ int.class, AppLog.LoggedItem.class }, new Hook(param -> {
+            Patcher.addFusedPatch(c, "onConfigure", new Class<?>[]{ int.class, AppLog.LoggedItem.class }, new Hook(param -> {
                 AppLog.LoggedItem loggedItem = (AppLog.LoggedItem) param.args[1];
                 Throwable th = loggedItem.m;
                 if (th != null) try {
@@ -255,7 +269,7 @@ public final class Main {
 
         // use new member profile editor for nitro users
         try {
-            Patcher.addPatch(
+            Patcher.addFusedPatch(
                 WidgetGuildProfileSheet$configureGuildActions$$inlined$apply$lambda$4.class.getDeclaredMethod("invoke", View.class),
                 new InsteadHook(param -> {
                     var ctx = ((View) param.args[0]).getContext();
@@ -276,7 +290,7 @@ public final class Main {
         //   at android.view.View.dispatchWindowInsetsAnimationStart(View.java:12671)
         if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.R) {
             try {
-                Patcher.addPatch(
+                Patcher.addFusedPatch(
                     SmoothKeyboardReactionHelper.Callback.class.getDeclaredMethod("onStart", WindowInsetsAnimation.class, WindowInsetsAnimation.Bounds.class),
                     new PreHook(param -> {
                         var animation = (WindowInsetsAnimation) param.args[0];
@@ -288,10 +302,15 @@ public final class Main {
             }
         }
 
+        StartupProfiler.end(patchesSpan);
+
         if (loadedPlugins) {
             PluginManager.startCorePlugins();
             startAllPlugins();
         }
+
+        StartupProfiler.end(span);
+        if (loadedPlugins) StartupProfiler.finish();
     }
 
     private static void crashHandler(Thread thread, Throwable throwable) {
@@ -348,6 +367,7 @@ public final class Main {
                 }
                 sb.append("Check the crashes section in the settings for more info.");
 
+                SettingsUtilsJSON.flushAll();
                 Toast.makeText(Utils.getAppContext(), sb.toString(), Toast.LENGTH_LONG).show();
                 Looper.loop();
             }
@@ -355,6 +375,7 @@ public final class Main {
         try {
             Thread.sleep(4200); // Wait for toast to end
         } catch (InterruptedException ignored) {}
+        SettingsUtilsJSON.flushAll();
         System.exit(2);
     }
 
@@ -372,6 +393,7 @@ public final class Main {
     }
 
     private static void loadAllPlugins(Context context) {
+        var span = StartupProfiler.begin("loadAllPlugins");
         File dir = new File(Constants.PLUGINS_PATH);
         if (!dir.exists()) {
             boolean res = dir.mkdirs();
@@ -386,10 +408,11 @@ public final class Main {
             // Always sort plugins alphabetically for reproducible results
             Arrays.sort(sortedPlugins, Comparator.comparing(File::getName));
 
+            var pluginZips = new ArrayList<File>(sortedPlugins.length);
             for (File f : sortedPlugins) {
                 var name = f.getName();
                 if (name.endsWith(".zip")) {
-                    PluginManager.loadPlugin(context, f);
+                    pluginZips.add(f);
                 } else if (!name.equals("oat")) { // Some roms create this
                     if (f.isDirectory()) {
                         Utils.showToast(
@@ -406,13 +429,17 @@ public final class Main {
                 }
             }
 
+            PluginManager.loadPlugins(context, pluginZips);
+
             if (!PluginManager.failedToLoad.isEmpty())
                 Utils.showToast("Some plugins failed to load. Check the plugins page for more info.");
         }
         loadedPlugins = true;
+        StartupProfiler.end(span);
     }
 
     private static void startAllPlugins() {
+        var span = StartupProfiler.begin("startAllPlugins");
         for (Map.Entry<String, Plugin> entry : PluginManager.plugins.entrySet()) {
             // coreplugins are started separately
             if (entry.getValue() instanceof CorePlugin) continue;
@@ -420,13 +447,15 @@ public final class Main {
             var name = entry.getKey();
             try {
                 if (PluginManager.isPluginEnabled(name))
-                    PluginManager.startPlugin(name);
+                    PluginManager.startPluginLazily(name);
             } catch (Throwable e) {
                 PluginManager.logger.error("Exception while starting plugin: " + name, e);
                 PluginManager.stopPlugin(name);
             }
         }
 
+        StartupProfiler.end(span);
+
         Utils.threadPool.execute(() -> PluginUpdater.checkUpdates(true));
     }
 
@@ -435,6 +464,7 @@ public final class Main {
             preInitWithPermissions(activity);
             PluginManager.startCorePlugins();
             startAllPlugins();
+            StartupProfiler.finish();
         } else Toast.makeText(activity, "You have to grant storage permission to use Aliucord", Toast.LENGTH_LONG).show();
     }
 
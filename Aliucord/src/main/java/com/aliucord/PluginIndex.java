@@ -0,0 +1,152 @@
+/*
+ * This file is part of Aliucord, an Android Discord client mod.
+ * Copyright (c) 2024 Juby210 & Vendicated
+ * Licensed under the Open Software License version 3.0
+ */
+
+package com.aliucord;
+
+import androidx.annotation.Nullable;
+
+import com.aliucord.utils.GsonUtils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import kotlin.io.FilesKt;
+
+/**
+ * On-disk index of plugin manifests, so unchanged plugin zips don't have to be opened just to read their manifest.
+ * Entries are keyed by the absolute path of the plugin zip and are only used if size and modification time still match.
+ * The index is rebuilt from scratch if it is missing, corrupted or was written by an incompatible version.
+ */
+final class PluginIndex {
+    private static final int VERSION = 1;
+    private static final Logger logger = new Logger("PluginIndex");
+    private static final File indexFile = new File(Constants.SETTINGS_PATH, ".pluginIndex.json");
+    private static final long SAVE_DELAY_MS = 1000;
+    private static final AtomicBoolean saveScheduled = new AtomicBoolean();
+
+    private static final class Entry {
+        long size;
+        long lastModified;
+        /** Raw manifest.json of the plugin */
+        String manifest;
+
+        Entry(long size, long lastModified, String manifest) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.manifest = manifest;
+        }
+    }
+
+    private static final class Index {
+        int version = VERSION;
+        Map<String, Entry> entries = new HashMap<>();
+    }
+
+    private static Map<String, Entry> entries;
+    private static volatile boolean dirty;
+
+    private static synchronized Map<String, Entry> getEntries() {
+        if (entries == null) {
+            entries = new ConcurrentHashMap<>();
+            if (indexFile.exists()) try {
+                var index = GsonUtils.fromJson(GsonUtils.getGson(), FilesKt.readText(indexFile, StandardCharsets.UTF_8), Index.class);
+                if (index == null || index.version != VERSION || index.entries == null) {
+                    logger.info("Plugin index is outdated, rebuilding");
+                    dirty = true;
+                } else {
+                    for (var e : index.entries.entrySet()) {
+                        if (e.getKey() != null && e.getValue() != null && e.getValue().manifest != null)
+                            entries.put(e.getKey(), e.getValue());
+                    }
+                }
+            } catch (Throwable e) {
+                logger.error("Failed to read plugin index, rebuilding", e);
+                dirty = true;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Gets the indexed manifest of the specified plugin zip
+     *
+     * @param file Plugin zip
+     * @return The raw manifest, or null if the file is not indexed or changed since it was indexed
+     */
+    @Nullable
+    static String getManifest(File file) {
+        var entry = getEntries().get(file.getAbsolutePath());
+        if (entry == null) return null;
+        if (entry.size != file.length() || entry.lastModified != file.lastModified()) {
+            invalidate(file);
+            return null;
+        }
+        return entry.manifest;
+    }
+
+    /**
+     * Indexes the manifest of the specified plugin zip
+     *
+     * @param file     Plugin zip
+     * @param manifest Raw manifest read from the zip
+     */
+    static void putManifest(File file, String manifest) {
+        getEntries().put(file.getAbsolutePath(), new Entry(file.length(), file.lastModified(), manifest));
+        dirty = true;
+    }
+
+    /**
+     * Removes the specified plugin zip from the index, for example because its indexed manifest turned out to be invalid
+     *
+     * @param file Plugin zip
+     */
+    static void invalidate(File file) {
+        if (getEntries().remove(file.getAbsolutePath()) != null) dirty = true;
+    }
+
+    /**
+     * Saves the index on a background thread after a short delay, so loading several plugins in a row only writes it once
+     */
+    static void scheduleSave() {
+        if (saveScheduled.compareAndSet(false, true)) Utils.mainThread.postDelayed(() -> Utils.threadPool.execute(() -> {
+            // Cleared first, so changes made while saving schedule another save
+            saveScheduled.set(false);
+            save();
+        }), SAVE_DELAY_MS);
+    }
+
+    /**
+     * Writes the index to disk if it changed. Entries of plugin zips that no longer exist are dropped.
+     */
+    static synchronized void save() {
+        var entries = getEntries();
+        for (var path : entries.keySet()) {
+            if (!new File(path).exists()) {
+                entries.remove(path);
+                dirty = true;
+            }
+        }
+        if (!dirty) return;
+        dirty = false;
+
+        var index = new Index();
+        index.entries.putAll(entries);
+        var tmp = new File(indexFile.getPath() + ".tmp");
+        try {
+            FilesKt.writeText(tmp, GsonUtils.toJson(GsonUtils.getGson(), index), StandardCharsets.UTF_8);
+            if (!tmp.renameTo(indexFile)) throw new RuntimeException("Failed to rename temp file");
+        } catch (Throwable e) {
+            logger.error("Failed to save plugin index", e);
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            dirty = true;
+        }
+    }
+}
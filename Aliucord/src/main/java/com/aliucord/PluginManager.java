@@ -13,6 +13,8 @@ import android.content.res.Resources;
 import com.aliucord.coreplugins.badges.SupporterBadges;
 import com.aliucord.coreplugins.plugindownloader.PluginDownloader;
 import com.aliucord.coreplugins.rn.RNAPI;
+import com.aliucord.api.CommandsAPI;
+import com.aliucord.api.GatewayAPI;
 import com.aliucord.entities.CorePlugin;
 import com.aliucord.entities.Plugin;
 import com.aliucord.patcher.Patcher;
@@ -21,20 +23,48 @@ import com.aliucord.coreplugins.*;
 import com.aliucord.utils.*;
 
 import java.io.File;
-import java.io.InputStreamReader;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.*;
 
 import dalvik.system.PathClassLoader;
+import kotlin.Unit;
+import kotlin.jvm.functions.Function1;
 
 /** Aliucord's Plugin Manager */
 public class PluginManager {
     /** Map containing all loaded plugins */
     public static final Map<String, Plugin> plugins = new LinkedHashMap<>();
-    public static final Map<PathClassLoader, Plugin> classLoaders = new HashMap<>();
+    /** Concurrent, as it is read while plugins are loaded in parallel, e.g. to attribute patches */
+    public static final Map<PathClassLoader, Plugin> classLoaders = new ConcurrentHashMap<>();
     public static final Logger logger = new Logger("PluginManager");
     /** Plugins that failed to load for various reasons. Map of file to String or Exception */
     public static final Map<File, Object> failedToLoad = new LinkedHashMap<>();
+    /** Enabled plugins waiting for one of their activation triggers. Map of plugin name to its triggers */
+    private static final Map<String, Plugin.Manifest.ActivationTriggers> dormantPlugins = Collections.synchronizedMap(new LinkedHashMap<>());
+    /** Placeholder commands registered for the command triggers of dormant plugins */
+    private static final Map<String, CommandsAPI> activationCommands = new HashMap<>();
+    /** Gateway listeners registered for the event triggers of dormant plugins */
+    private static final Map<String, Function1<String, Unit>> activationListeners = new HashMap<>();
+
+    /**
+     * Result of the first stage of loading a plugin, see {@link #preparePlugin(Context, File)}.
+     * Either {@link #error} is set or all other fields are.
+     */
+    static final class PreparedPlugin {
+        final File file;
+        final String fileName;
+        PathClassLoader loader;
+        Plugin.Manifest manifest;
+        Class<? extends Plugin> pluginClass;
+        /** Reason preparing failed. String or Exception, same as {@link #failedToLoad} */
+        Object error;
+
+        PreparedPlugin(File file) {
+            this.file = file;
+            this.fileName = file.getName().replace(".zip", "");
+        }
+    }
 
     /**
      * Loads a plugin
@@ -42,32 +72,123 @@ public class PluginManager {
      * @param context Context
      * @param file    Plugin file
      */
-    @SuppressWarnings({ "JavaReflectionMemberAccess", "unchecked" })
     public static void loadPlugin(Context context, File file) {
-        String fileName = file.getName().replace(".zip", "");
-        logger.info("Loading plugin: " + fileName);
+        loadPreparedPlugin(context, preparePlugin(context, file));
+        PluginIndex.scheduleSave();
+    }
+
+    /**
+     * Loads multiple plugins. Creating the classloaders and reading the manifests is done in parallel
+     * on a bounded pool, while constructing and loading the plugins happens on the calling thread in the
+     * order of the specified files, so load order and failure handling are the same as calling
+     * {@link #loadPlugin(Context, File)} for each file.
+     *
+     * @param context Context
+     * @param files   Plugin files, in the order they should be loaded in
+     */
+    public static void loadPlugins(Context context, List<File> files) {
+        if (files.isEmpty()) return;
+
+        int threads = Math.min(files.size(), Math.max(2, Runtime.getRuntime().availableProcessors()));
+        var executor = Executors.newFixedThreadPool(threads);
         try {
-            var loader = new PathClassLoader(file.getAbsolutePath(), context.getClassLoader());
+            var prepared = new ArrayList<Future<PreparedPlugin>>(files.size());
+            for (var file : files) prepared.add(executor.submit(() -> preparePlugin(context, file)));
+
+            for (int i = 0; i < files.size(); i++) {
+                PreparedPlugin plugin;
+                try {
+                    plugin = prepared.get(i).get();
+                } catch (Throwable e) {
+                    // preparePlugin catches everything itself, so this should only happen if we get interrupted
+                    plugin = new PreparedPlugin(files.get(i));
+                    plugin.error = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+                }
+                loadPreparedPlugin(context, plugin);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        PluginIndex.scheduleSave();
+    }
 
-            Plugin.Manifest manifest;
+    /**
+     * First stage of loading a plugin: Creates its classloader, reads the manifest and loads the plugin class.
+     * Apart from the thread safe {@link PluginIndex} this does not touch any shared state, so it is safe to call from any thread.
+     */
+    @SuppressWarnings("unchecked")
+    static PreparedPlugin preparePlugin(Context context, File file) {
+        var prepared = new PreparedPlugin(file);
+        try {
+            long classLoaderStart = System.nanoTime();
+            var loader = new PathClassLoader(file.getAbsolutePath(), context.getClassLoader());
+            long classLoaderEnd = System.nanoTime();
+
+            // The plugin name is only known once the manifest was parsed, so both spans are attributed to it afterwards
+            var manifestSpan = StartupProfiler.begin("manifest");
+            // Unchanged plugins don't need their zip opened to read the manifest, the index is validated by loading the plugin class
+            var indexedManifest = PluginIndex.getManifest(file);
+            if (indexedManifest != null) try {
+                prepared.manifest = GsonUtils.fromJson(GsonUtils.getGson(), indexedManifest, Plugin.Manifest.class);
+                prepared.pluginClass = (Class<? extends Plugin>) loader.loadClass(prepared.manifest.pluginClassName);
+                prepared.loader = loader;
+                manifestSpan.plugin = prepared.manifest.name;
+                StartupProfiler.end(manifestSpan);
+                StartupProfiler.record("classloader", prepared.manifest.name, classLoaderStart, classLoaderEnd);
+                return prepared;
+            } catch (Throwable e) {
+                logger.warn("Indexed manifest of " + prepared.fileName + " is invalid, reading it from the plugin", e);
+                PluginIndex.invalidate(file);
+            }
 
+            String rawManifest;
             try (var stream = loader.getResourceAsStream("manifest.json")) {
                 if (stream == null) {
-                    failedToLoad.put(file, "No manifest found");
-                    logger.error("Failed to load plugin " + fileName + ": No manifest found", null);
-                    return;
+                    prepared.error = "No manifest found";
+                    return prepared;
                 }
 
-                try (var reader = new InputStreamReader(stream)) {
-                    manifest = GsonUtils.fromJson(GsonUtils.getGson(), reader, Plugin.Manifest.class);
-                }
+                rawManifest = IOUtils.readAsText(stream);
             }
+            prepared.manifest = GsonUtils.fromJson(GsonUtils.getGson(), rawManifest, Plugin.Manifest.class);
+
+            prepared.pluginClass = (Class<? extends Plugin>) loader.loadClass(prepared.manifest.pluginClassName);
+            prepared.loader = loader;
+            PluginIndex.putManifest(file, rawManifest);
+            manifestSpan.plugin = prepared.manifest.name;
+            StartupProfiler.end(manifestSpan);
+            StartupProfiler.record("classloader", prepared.manifest.name, classLoaderStart, classLoaderEnd);
+        } catch (Throwable e) {
+            prepared.error = e;
+        }
+        return prepared;
+    }
 
-            var name = manifest.name;
+    /**
+     * Second stage of loading a plugin: Constructs the plugin, registers it and calls {@link Plugin#load(Context)}.
+     * Must be called on the thread plugins are loaded on.
+     */
+    @SuppressWarnings("JavaReflectionMemberAccess")
+    static void loadPreparedPlugin(Context context, PreparedPlugin prepared) {
+        var file = prepared.file;
+        var fileName = prepared.fileName;
+        logger.info("Loading plugin: " + fileName);
 
-            var pluginClass = (Class<? extends Plugin>) loader.loadClass(manifest.pluginClassName);
+        if (prepared.error != null) {
+            failedToLoad.put(file, prepared.error);
+            if (prepared.error instanceof Throwable)
+                logger.error("Failed to load plugin " + fileName + ":\n", (Throwable) prepared.error);
+            else
+                logger.error("Failed to load plugin " + fileName + ": " + prepared.error, null);
+            return;
+        }
+
+        try {
+            var manifest = prepared.manifest;
+            var name = manifest.name;
+            var pluginClass = prepared.pluginClass;
 
-            Patcher.addPatch(pluginClass.getDeclaredConstructor(), new PreHook(param -> {
+            Patcher.addFusedPatch(pluginClass.getDeclaredConstructor(), new PreHook(param -> {
                 var plugin = (Plugin) param.thisObject;
                 try {
                     ReflectUtils.setField(Plugin.class, plugin, "manifest", manifest);
@@ -76,7 +197,9 @@ public class PluginManager {
                 }
             }));
 
+            var constructorSpan = StartupProfiler.begin("constructor", name);
             var pluginInstance = pluginClass.newInstance();
+            StartupProfiler.end(constructorSpan);
             if (plugins.containsKey(name)) {
                 logger.error("Plugin with name " + name + " already exists", null);
                 return;
@@ -91,8 +214,10 @@ public class PluginManager {
                 pluginInstance.resources = new Resources(assets, context.getResources().getDisplayMetrics(), context.getResources().getConfiguration());
             }
             plugins.put(name, pluginInstance);
-            classLoaders.put(loader, pluginInstance);
+            classLoaders.put(prepared.loader, pluginInstance);
+            var loadSpan = StartupProfiler.begin("load", name);
             pluginInstance.load(context);
+            StartupProfiler.end(loadSpan);
         } catch (Throwable e) {
             failedToLoad.put(file, e);
             logger.error("Failed to load plugin " + fileName + ":\n", e);
@@ -115,6 +240,14 @@ public class PluginManager {
         if (plugin != null) try {
             plugin.unload(Utils.getAppContext());
             plugins.remove(name);
+            // Drop references to the plugin's class loader so it can be collected
+            for (var it = classLoaders.entrySet().iterator(); it.hasNext(); ) {
+                var entry = it.next();
+                if (entry.getValue() == plugin) {
+                    it.remove();
+                    ReflectUtils.clearCache(entry.getKey());
+                }
+            }
         } catch (Throwable e) { logger.error("Exception while unloading plugin: " + name, e); }
     }
 
@@ -161,16 +294,99 @@ public class PluginManager {
      */
     public static void startPlugin(String name) {
         logger.info("Starting plugin: " + name);
+        clearActivationTriggers(name);
         try {
             long startTime = System.currentTimeMillis();
+            var span = StartupProfiler.begin("start", name);
 
             Objects.requireNonNull(plugins.get(name)).start(Utils.getAppContext());
 
+            StartupProfiler.end(span);
             logger.info("Started plugin: " + name + " in " + (System.currentTimeMillis() - startTime) + " milliseconds");
 
         } catch (Throwable e) { logger.error("Exception while starting plugin: " + name, e); }
     }
 
+    /**
+     * Starts a plugin, or if it declares {@link Plugin.Manifest.ActivationTriggers}, registers them
+     * so the plugin is only started once one of them fires
+     *
+     * @param name Name of the plugin to start
+     */
+    public static void startPluginLazily(String name) {
+        var plugin = plugins.get(name);
+        var triggers = plugin == null || plugin instanceof CorePlugin ? null : plugin.getManifest().activationTriggers;
+        if (triggers == null || triggers.isEmpty()) {
+            startPlugin(name);
+            return;
+        }
+
+        logger.info("Deferring start of plugin " + name + " until first use");
+        dormantPlugins.put(name, triggers);
+
+        if (triggers.commands != null && triggers.commands.length != 0) {
+            var commands = new CommandsAPI(name);
+            for (var command : triggers.commands) {
+                commands.registerCommand(command, "Activates " + name, ctx -> {
+                    Utils.mainThread.post(() -> activatePlugin(name));
+                    return new CommandsAPI.CommandResult(name + " has been activated, run this command again to use it", null, false);
+                });
+            }
+            activationCommands.put(name, commands);
+        }
+
+        if (triggers.events != null && triggers.events.length != 0) {
+            Function1<String, Unit> listener = rawEvent -> {
+                if (dormantPlugins.containsKey(name)) Utils.mainThread.post(() -> activatePlugin(name));
+                return Unit.a;
+            };
+            GatewayAPI.onRawEvent(Arrays.asList(triggers.events), listener);
+            activationListeners.put(name, listener);
+        }
+    }
+
+    /**
+     * Starts a dormant plugin. Called when one of its activation triggers fires, does nothing if the plugin is not dormant.
+     *
+     * @param name Name of the plugin to activate
+     */
+    public static void activatePlugin(String name) {
+        if (!dormantPlugins.containsKey(name)) return;
+        logger.info("Activating plugin: " + name);
+        startPlugin(name);
+    }
+
+    /**
+     * Checks whether a plugin is enabled but still waiting for one of its activation triggers
+     *
+     * @param name Name of the plugin
+     * @return Whether the plugin is dormant
+     */
+    public static boolean isPluginDormant(String name) {
+        return dormantPlugins.containsKey(name);
+    }
+
+    /**
+     * Gets all plugins that are enabled but still waiting for one of their activation triggers
+     *
+     * @return Names of all dormant plugins
+     */
+    public static List<String> getDormantPlugins() {
+        synchronized (dormantPlugins) {
+            return new ArrayList<>(dormantPlugins.keySet());
+        }
+    }
+
+    /** Removes the activation triggers of a plugin. Returns whether the plugin was dormant */
+    private static boolean clearActivationTriggers(String name) {
+        if (dormantPlugins.remove(name) == null) return false;
+        var commands = activationCommands.remove(name);
+        if (commands != null) commands.unregisterAll();
+        var listener = activationListeners.remove(name);
+        if (listener != null) GatewayAPI.removeRawListener(listener);
+        return true;
+    }
+
     /**
      * Stops a plugin
      *
@@ -178,6 +394,7 @@ public class PluginManager {
      */
     public static void stopPlugin(String name) {
         logger.info("Stopping plugin: " + name);
+        if (clearActivationTriggers(name)) return; // dormant plugins were never started
         try {
             Plugin p = plugins.get(name);
 
@@ -238,6 +455,7 @@ public class PluginManager {
     }
 
     static void loadCorePlugins(Context context) {
+        var span = StartupProfiler.begin("loadCorePlugins");
         CorePlugin[] corePlugins = {
             new ButtonsAPI(),
             new CommandHandler(),
@@ -263,18 +481,23 @@ public class PluginManager {
             logger.info("Loading coreplugin: " + p.getName());
             try {
                 plugins.put(p.getName(), p);
+                var loadSpan = StartupProfiler.begin("load", p.getName());
                 p.load(context);
+                StartupProfiler.end(loadSpan);
             } catch (Throwable e) {
                 logger.errorToast("Failed to load coreplugin " + p.getName(), e);
             }
         }
+        StartupProfiler.end(span);
     }
 
     static void startCorePlugins() {
+        var span = StartupProfiler.begin("startCorePlugins");
         for (Plugin p : plugins.values()) {
             if (!(p instanceof CorePlugin)) continue;
             if (!isPluginEnabled(p.getName())) continue;
             startPlugin(p.getName());
         }
+        StartupProfiler.end(span);
     }
 }
@@ -0,0 +1,162 @@
+/*
+ * This file is part of Aliucord, an Android Discord client mod.
+ * Copyright (c) 2024 Juby210 & Vendicated
+ * Licensed under the Open Software License version 3.0
+ */
+
+package com.aliucord
+
+import java.lang.reflect.Type
+import java.util.*
+import java.util.concurrent.*
+
+/**
+ * Storage backend of a [com.aliucord.api.SettingsAPI].
+ * The default backend is [SettingsUtilsJSON], [SettingsUtilsBinary] is a faster alternative for settings holding large values
+ */
+interface SettingsBackend {
+    /**
+     * Resets All Settings
+     * @return true if successful, else false
+     */
+    fun resetFile(): Boolean
+
+    /**
+     * Toggles Boolean and returns it
+     * @param key Key of the value
+     * @param defVal Default Value if setting doesn't exist
+     * @return Toggled boolean
+     */
+    fun toggleBool(key: String, defVal: Boolean): Boolean
+
+    /**
+     * Removes Item from settings
+     * @param key Key of the value
+     * @return True if removed, else false
+     */
+    fun remove(key: String): Boolean
+
+    /**
+     * Gets All Keys from settings
+     * @return List of all keys
+     */
+    fun getAllKeys(): List<String>
+
+    /**
+     * Check if Key exists in settings
+     * @param key Key of the value
+     * @return True if found, else false
+     */
+    fun exists(key: String): Boolean
+
+    fun getBool(key: String, defValue: Boolean): Boolean
+    fun setBool(key: String, value: Boolean)
+    fun getInt(key: String, defValue: Int): Int
+    fun setInt(key: String, value: Int)
+    fun getFloat(key: String, defValue: Float): Float
+    fun setFloat(key: String, value: Float)
+    fun getLong(key: String, defValue: Long): Long
+    fun setLong(key: String, value: Long)
+    fun getString(key: String, defValue: String?): String?
+    fun setString(key: String, value: String?)
+
+    /**
+     * Get an [Object] from the preferences. The returned object is cached and returned again by later calls,
+     * so don't modify it without passing it to [setObject] afterwards
+     * @param key Key of the value
+     * @param defValue Default value
+     * @param type Type of the object
+     * @return Value if found, else the defValue
+     */
+    fun <T> getObject(key: String, defValue: T, type: Type?): T
+
+    /**
+     * Set an [Object] item
+     * @param key Key of the item
+     * @param value Value
+     */
+    fun setObject(key: String, value: Any)
+
+    /**
+     * Get a value without knowing its type
+     * @param key Key of the value
+     * @return The value as the type it is stored as, objects deserialised to maps and lists. Null if it doesn't exist
+     */
+    fun getUnknown(key: String): Any?
+
+    /**
+     * Applies several changes at once, see [SettingsEditor].
+     * Readers see either all or none of the changes, and listeners are notified once for all of them
+     * @param changes New values by key. Values other than [Boolean], [Int], [Long], [Float] and [String] are stored as objects,
+     * null removes the key
+     */
+    fun putAll(changes: Map<String, Any?>)
+
+    /** Immediately writes pending changes to disk, blocking until done */
+    fun flush()
+
+    /** Adds a listener that is notified after values are changed */
+    fun addChangeListener(listener: SettingsChangeListener)
+
+    /** Removes a listener added via [addChangeListener] */
+    fun removeChangeListener(listener: SettingsChangeListener)
+}
+
+/** Listener for changes of a [SettingsBackend] */
+fun interface SettingsChangeListener {
+    /**
+     * Called on the thread that made the change, once per changed value or transaction
+     * @param keys Keys that were changed or removed
+     */
+    fun onChanged(keys: Set<String>)
+}
+
+/** Change listeners of a [SettingsBackend] */
+internal class SettingsListeners {
+    private val listeners = CopyOnWriteArrayList<SettingsChangeListener>()
+
+    fun add(listener: SettingsChangeListener) = listeners.add(listener)
+    fun remove(listener: SettingsChangeListener) = listeners.remove(listener)
+
+    fun notify(key: String) {
+        if (listeners.isNotEmpty()) notify(setOf(key))
+    }
+
+    fun notify(keys: Set<String>) {
+        for (listener in listeners) try {
+            listener.onChanged(keys)
+        } catch (e: Throwable) {
+            logger.error("Settings change listener threw", e)
+        }
+    }
+
+    private companion object {
+        val logger = Logger("Settings")
+    }
+}
+
+/** Writes changed [SettingsBackend]s to disk after a short delay, so that bursts of changes only cause a single write */
+internal object SettingsWriter {
+    private const val WRITE_DELAY_MS = 500L
+
+    private val executor = Executors.newSingleThreadScheduledExecutor {
+        Thread(it, "Aliucord Settings Writer").apply { isDaemon = true }
+    }
+    private val dirty: MutableSet<SettingsBackend> = Collections.newSetFromMap(ConcurrentHashMap())
+
+    /** Schedules a write of the backend, unless one is already pending */
+    fun schedule(backend: SettingsBackend) {
+        if (dirty.add(backend)) executor.schedule(Runnable { backend.flush() }, WRITE_DELAY_MS, TimeUnit.MILLISECONDS)
+    }
+
+    /** Marks the pending write of the backend as done. Called by the backend when it flushes */
+    fun done(backend: SettingsBackend) {
+        dirty.remove(backend)
+    }
+
+    fun flushAll() = dirty.toList().forEach { it.flush() }
+
+    fun flushAllAsync() {
+        if (dirty.isNotEmpty()) executor.execute(::flushAll)
+    }
+}
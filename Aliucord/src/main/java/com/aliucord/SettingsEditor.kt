@@ -0,0 +1,69 @@
+/*
+ * This file is part of Aliucord, an Android Discord client mod.
+ * Copyright (c) 2024 Juby210 & Vendicated
+ * Licensed under the Open Software License version 3.0
+ */
+
+package com.aliucord
+
+import com.aliucord.api.SettingsAPI
+
+/**
+ * Collects changes to settings and applies them in a single transaction, similar to [android.content.SharedPreferences.Editor].
+ * Nothing is changed until [apply] or [commit] is called, after which readers see all changes at once,
+ * they are written to disk together and change listeners are notified only once.
+ *
+ * Obtain one via [SettingsAPI.edit], or `SettingsEditor(Main.settings)` for Aliucord's own settings.
+ */
+@Suppress("unused")
+class SettingsEditor(private val backend: SettingsBackend) {
+    private val changes = LinkedHashMap<String, Any?>()
+
+    fun setBool(key: String, value: Boolean) = put(key, value)
+    fun setInt(key: String, value: Int) = put(key, value)
+    fun setFloat(key: String, value: Float) = put(key, value)
+    fun setLong(key: String, value: Long) = put(key, value)
+    fun setString(key: String, value: String?) = put(key, value)
+    fun setObject(key: String, value: Any) = put(key, value)
+
+    /** Removes the item with the specified key */
+    fun remove(key: String) = put(key, null)
+
+    private fun put(key: String, value: Any?): SettingsEditor {
+        changes[key] = value
+        return this
+    }
+
+    /** Applies the changes and writes them to disk in the background */
+    fun apply() {
+        backend.putAll(LinkedHashMap(changes))
+        changes.clear()
+    }
+
+    /** Applies the changes and immediately writes them to disk, blocking until done */
+    fun commit() {
+        apply()
+        backend.flush()
+    }
+}
+
+/**
+ * Changes several settings at once, see [SettingsEditor]
+ *
+ * ```
+ * settings.edit {
+ *     setBool("enabled", true)
+ *     setString("mode", "compact")
+ * }
+ * ```
+ */
+inline fun SettingsAPI.edit(block: SettingsEditor.() -> Unit) = edit().run {
+    block()
+    apply()
+}
+
+/** Changes several settings at once, see [SettingsEditor] */
+inline fun SettingsBackend.edit(block: SettingsEditor.() -> Unit) = SettingsEditor(this).run {
+    block()
+    apply()
+}
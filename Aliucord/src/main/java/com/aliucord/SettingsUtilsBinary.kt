@@ -0,0 +1,356 @@
+/*
+ * This file is part of Aliucord, an Android Discord client mod.
+ * Copyright (c) 2024 Juby210 & Vendicated
+ * Licensed under the Open Software License version 3.0
+ */
+
+package com.aliucord
+
+import com.aliucord.utils.GsonUtils.fromJson
+import com.aliucord.utils.GsonUtils.gson
+import com.aliucord.utils.GsonUtils.toJson
+import org.json.*
+import java.io.*
+import java.lang.reflect.Type
+import java.nio.BufferUnderflowException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Compact binary [SettingsBackend]. Use it via `SettingsAPI(name, SettingsUtilsBinary::new)`.
+ *
+ * Values are kept in typed slots, so primitives are never converted from and to strings and objects are only deserialised
+ * once instead of on every read. Changes are appended to a log file that is memory-mapped when loaded, and the log is
+ * rewritten once most of it consists of overwritten values. Existing JSON settings with the same name are migrated on first use.
+ */
+@Suppress("unused")
+class SettingsUtilsBinary(plugin: String) : SettingsBackend {
+    private val file = File(Constants.SETTINGS_PATH, "$plugin.bin")
+    private val jsonFile = File(Constants.SETTINGS_PATH, "$plugin.json")
+
+    /** A stored object. Its json is deserialised lazily and the result is kept until a different type is requested */
+    private class ObjectSlot(val json: String, @Volatile var cached: Pair<Type?, Any>?)
+
+    /** Values by key: [Boolean], [Int], [Long], [Float], [String] or [ObjectSlot] */
+    @Volatile
+    private var values = ConcurrentHashMap<String, Any>()
+    private var loaded = false
+
+    /** Records that were not written to disk yet. Guarded by this instance */
+    private val pending = ByteArrayOutputStream()
+    private var dirty = false
+    /** Amount of records in the file, used to decide when to compact it. Guarded by this instance */
+    private var recordCount = 0
+    /** Length of the valid part of the file, or -1 if it has to be rewritten. Guarded by [fileLock] */
+    private var validLength = -1L
+    /** Whether the JSON settings were migrated and should be moved away once the migrated data was written */
+    private var migrated = false
+    private val fileLock = Any()
+    private val listeners = SettingsListeners()
+
+    init {
+        val dir = File(Constants.SETTINGS_PATH)
+        if (!dir.exists() && !dir.mkdir()) throw RuntimeException("Failed to create settings dir")
+    }
+
+    private fun values(): ConcurrentHashMap<String, Any> {
+        if (!loaded) synchronized(this) {
+            if (!loaded) {
+                if (file.exists()) load() else if (jsonFile.exists()) migrate()
+                loaded = true
+            }
+        }
+        return values
+    }
+
+    private fun load() {
+        try {
+            RandomAccessFile(file, "r").use { raf ->
+                val buf = raf.channel.map(FileChannel.MapMode.READ_ONLY, 0, raf.length())
+                if (buf.remaining() < HEADER_SIZE || buf.int != MAGIC || buf.get() != VERSION) {
+                    logger.warn("Invalid settings file ${file.name}, ignoring it")
+                    return
+                }
+
+                var valid = buf.position()
+                try {
+                    while (buf.hasRemaining()) {
+                        val type = buf.get()
+                        val key = buf.readString()
+                        when (type) {
+                            T_REMOVE -> values.remove(key)
+                            T_BOOL -> values[key] = buf.get() != 0.toByte()
+                            T_INT -> values[key] = buf.int
+                            T_LONG -> values[key] = buf.long
+                            T_FLOAT -> values[key] = buf.float
+                            T_STRING -> values[key] = buf.readString()
+                            T_OBJECT -> values[key] = ObjectSlot(buf.readString(), null)
+                            else -> throw IOException("Unknown record type $type")
+                        }
+                        recordCount++
+                        valid = buf.position()
+                    }
+                } catch (e: BufferUnderflowException) {
+                    // Crashed while appending. Drop the incomplete record, the next write truncates it
+                    logger.warn("Dropping incomplete record in ${file.name}")
+                }
+                validLength = valid.toLong()
+            }
+        } catch (e: IOException) {
+            logger.error("Failed to read settings ${file.name}", e)
+        }
+    }
+
+    private fun migrate() {
+        try {
+            val text = jsonFile.readText()
+            if (text.isEmpty()) return
+            val json = JSONObject(text)
+            for (key in json.keys()) {
+                values[key] = when (val value = json.get(key)) {
+                    is Boolean, is Int, is Long, is String -> value
+                    // Numbers that would lose digits as a float, like most doubles, are kept as json instead
+                    is Number -> value.toFloat().let { if (it.toString() == value.toString()) it else ObjectSlot(value.toString(), null) }
+                    is JSONObject, is JSONArray -> ObjectSlot(value.toString(), null)
+                    else -> value.toString()
+                }
+            }
+            migrated = true
+            markDirty()
+        } catch (e: Throwable) {
+            logger.error("Failed to migrate settings ${jsonFile.name}", e)
+        }
+    }
+
+    private fun put(key: String, value: Any?) {
+        putLocked(key, value)
+        listeners.notify(key)
+    }
+
+    @Synchronized
+    private fun putLocked(key: String, value: Any?) {
+        val values = values()
+        if (value == null) values.remove(key) else values[key] = value
+
+        DataOutputStream(pending).writeRecord(key, value)
+        recordCount++
+        markDirty()
+    }
+
+    private fun markDirty() {
+        if (!dirty) {
+            dirty = true
+            SettingsWriter.schedule(this)
+        }
+    }
+
+    override fun putAll(changes: Map<String, Any?>) {
+        if (changes.isEmpty()) return
+        val slots = changes.mapValues { (_, value) ->
+            when (value) {
+                null, is Boolean, is Int, is Long, is Float, is String -> value
+                // Not cached, as the caller may keep modifying the value
+                else -> ObjectSlot(gson.toJson(value), null)
+            }
+        }
+        synchronized(this) {
+            // Apply the changes to a copy and swap it in, so readers never see only part of them
+            val copy = ConcurrentHashMap(values())
+            val out = DataOutputStream(pending)
+            slots.forEach { (key, value) ->
+                if (value == null) copy.remove(key) else copy[key] = value
+                out.writeRecord(key, value)
+                recordCount++
+            }
+            values = copy
+            markDirty()
+        }
+        listeners.notify(changes.keys)
+    }
+
+    override fun addChangeListener(listener: SettingsChangeListener) {
+        listeners.add(listener)
+    }
+
+    override fun removeChangeListener(listener: SettingsChangeListener) {
+        listeners.remove(listener)
+    }
+
+    override fun flush() {
+        synchronized(fileLock) {
+            val (rewrite, bytes) = synchronized(this) {
+                if (!dirty) return
+                dirty = false
+                SettingsWriter.done(this)
+
+                val rewrite = validLength < 0 || !file.exists() || file.length() != validLength ||
+                    recordCount > values.size * 2 + COMPACT_SLACK
+                val bytes = if (rewrite) {
+                    recordCount = values.size
+                    ByteArrayOutputStream().also { bos ->
+                        DataOutputStream(bos).run { values.forEach { (key, value) -> writeRecord(key, value) } }
+                    }.toByteArray()
+                } else {
+                    pending.toByteArray()
+                }
+                pending.reset()
+                rewrite to bytes
+            }
+
+            try {
+                if (rewrite) {
+                    val tmp = File(file.path + ".tmp")
+                    FileOutputStream(tmp).use {
+                        it.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).put(VERSION).array())
+                        it.write(bytes)
+                        it.fd.sync()
+                    }
+                    if (!tmp.renameTo(file)) {
+                        tmp.delete()
+                        throw IOException("Failed to rename temp file")
+                    }
+                    validLength = (HEADER_SIZE + bytes.size).toLong()
+
+                    if (migrated && jsonFile.renameTo(File(jsonFile.path + ".migrated"))) migrated = false
+                } else {
+                    FileOutputStream(file, true).use {
+                        it.write(bytes)
+                        it.fd.sync()
+                    }
+                    validLength += bytes.size
+                }
+            } catch (e: Throwable) {
+                logger.error("Failed to save settings ${file.name}", e)
+                // Rewrite everything on the next change, as the appended records may be incomplete
+                validLength = -1
+            }
+        }
+    }
+
+    override fun resetFile(): Boolean {
+        val (deleted, keys) = synchronized(fileLock) {
+            val keys = synchronized(this) {
+                val values = values()
+                values.keys.toSet().also {
+                    values.clear()
+                    pending.reset()
+                    recordCount = 0
+                    dirty = false
+                    SettingsWriter.done(this)
+                }
+            }
+            validLength = -1
+            file.delete() to keys
+        }
+        if (keys.isNotEmpty()) listeners.notify(keys)
+        return deleted
+    }
+
+    @Synchronized
+    override fun toggleBool(key: String, defVal: Boolean) = (!getBool(key, !defVal)).also { setBool(key, it) }
+
+    override fun remove(key: String) = synchronized(this) {
+        values().containsKey(key).also { if (it) putLocked(key, null) }
+    }.also { if (it) listeners.notify(key) }
+
+    override fun getAllKeys() = values().keys.toList()
+    override fun exists(key: String) = values().containsKey(key)
+
+    /** Numbers are stored as such, or as an [ObjectSlot] if they were migrated and don't fit a float */
+    private fun getNumber(key: String) = when (val value = values()[key]) {
+        is Number -> value
+        is ObjectSlot -> value.json.toBigDecimalOrNull()
+        else -> null
+    }
+
+    override fun getBool(key: String, defValue: Boolean) = values()[key] as? Boolean ?: defValue
+    override fun setBool(key: String, value: Boolean) = put(key, value)
+    override fun getInt(key: String, defValue: Int) = getNumber(key)?.toInt() ?: defValue
+    override fun setInt(key: String, value: Int) = put(key, value)
+    override fun getFloat(key: String, defValue: Float) = getNumber(key)?.toFloat() ?: defValue
+    override fun setFloat(key: String, value: Float) = put(key, value)
+    override fun getLong(key: String, defValue: Long) = getNumber(key)?.toLong() ?: defValue
+    override fun setLong(key: String, value: Long) = put(key, value)
+
+    override fun getString(key: String, defValue: String?) = when (val value = values()[key]) {
+        null -> defValue
+        is ObjectSlot -> value.json
+        else -> value.toString()
+    }
+
+    override fun setString(key: String, value: String?) = put(key, value)
+
+    @Suppress("UNCHECKED_CAST")
+    override fun <T> getObject(key: String, defValue: T, type: Type?): T {
+        val slot = values()[key] as? ObjectSlot ?: return defValue
+        val cached = slot.cached
+        if (cached != null && cached.first == type) return cached.second as T
+
+        val t: T = gson.fromJson(slot.json, type) ?: return defValue
+        slot.cached = type to t as Any
+        return t
+    }
+
+    // The value isn't cached, as the caller may keep modifying it
+    override fun setObject(key: String, value: Any) = put(key, ObjectSlot(gson.toJson(value), null))
+
+    override fun getUnknown(key: String): Any? = when (val value = values()[key]) {
+        is ObjectSlot -> getObject<Any?>(key, null, Any::class.java)
+        else -> value
+    }
+
+    private companion object {
+        val logger = Logger("SettingsUtilsBinary")
+
+        const val MAGIC = 0x41435342 // ACSB
+        const val VERSION: Byte = 1
+        const val HEADER_SIZE = 5
+        /** Amount of overwritten records tolerated before the log is compacted, on top of one per live value */
+        const val COMPACT_SLACK = 32
+
+        const val T_REMOVE: Byte = 0
+        const val T_BOOL: Byte = 1
+        const val T_INT: Byte = 2
+        const val T_LONG: Byte = 3
+        const val T_FLOAT: Byte = 4
+        const val T_STRING: Byte = 5
+        const val T_OBJECT: Byte = 6
+
+        fun ByteBuffer.readString(): String {
+            val length = int
+            if (length < 0 || length > remaining()) throw BufferUnderflowException()
+            val bytes = ByteArray(length)
+            get(bytes)
+            return String(bytes, Charsets.UTF_8)
+        }
+
+        fun DataOutputStream.writeString(s: String) {
+            val bytes = s.toByteArray(Charsets.UTF_8)
+            writeInt(bytes.size)
+            write(bytes)
+        }
+
+        fun DataOutputStream.writeRecord(key: String, value: Any?) {
+            when (value) {
+                null -> writeByte(T_REMOVE.toInt())
+                is Boolean -> writeByte(T_BOOL.toInt())
+                is Int -> writeByte(T_INT.toInt())
+                is Long -> writeByte(T_LONG.toInt())
+                is Float -> writeByte(T_FLOAT.toInt())
+                is String -> writeByte(T_STRING.toInt())
+                is ObjectSlot -> writeByte(T_OBJECT.toInt())
+                else -> throw IllegalArgumentException("Unsupported value ${value.javaClass}")
+            }
+            writeString(key)
+            when (value) {
+                is Boolean -> writeBoolean(value)
+                is Int -> writeInt(value)
+                is Long -> writeLong(value)
+                is Float -> writeFloat(value)
+                is String -> writeString(value)
+                is ObjectSlot -> writeString(value.json)
+            }
+        }
+    }
+}
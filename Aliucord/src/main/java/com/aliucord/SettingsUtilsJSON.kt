@@ -1,5 +1,6 @@
 package com.aliucord
 
+import android.os.FileObserver
 import com.aliucord.PluginManager.logger
 import com.aliucord.settings.*
 import com.aliucord.utils.GsonUtils.fromJson
@@ -7,47 +8,206 @@ import com.aliucord.utils.GsonUtils.gson
 import com.aliucord.utils.GsonUtils.toJson
 import org.json.JSONArray
 import org.json.JSONObject
-import java.io.File
+import java.io.*
 import java.lang.reflect.Type
 import java.math.BigDecimal
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
 
 @Suppress("unused")
 /** Utility class to store and retrieve preferences  */
-class SettingsUtilsJSON(plugin: String) {
+class SettingsUtilsJSON(plugin: String) : SettingsBackend {
     private val settingsPath = Constants.SETTINGS_PATH + "/"
     private val settingsFile = "$settingsPath$plugin.json"
-    private val cache: MutableMap<String, Any> = HashMap()
-    private val settings: JSONObject by lazy {
+    private val fileName = "$plugin.json"
+
+    @Volatile
+    private var loaded: JSONObject? = null
+    /** Replaced as a whole by [putAll], so read it only once per call to not mix two versions */
+    private val settings: JSONObject
+        get() = loaded ?: synchronized(this) {
+            loaded ?: readFile().also {
+                loaded = it
+                watch(this)
+            }
+        }
+
+    /** Modification time and length of the file as last read or written by us, to tell our own writes from external ones */
+    @Volatile
+    private var fileModified = 0L
+    @Volatile
+    private var fileLength = 0L
+
+    /** A deserialised object and its approximate size in bytes */
+    private class CachedObject(val value: Any, val size: Long)
+
+    /**
+     * Deserialised objects by key and type, so [getObject] only has to parse a value once.
+     * The per key maps are replaced instead of modified, so reads need no locking
+     */
+    private val cache = ConcurrentHashMap<String, Map<Type?, CachedObject>>()
+    /** Incremented whenever a value changes, so objects deserialised from an outdated value aren't cached. Guarded by this instance */
+    private var modCount = 0
+
+    private val listeners = SettingsListeners()
+
+    /** Whether there are changes that were not written to disk yet. Guarded by this instance */
+    private var dirty = false
+    /** Serialises writes of this file, so an older snapshot can never overwrite a newer one */
+    private val fileLock = Any()
+
+    init {
+        val dir = File(settingsPath)
+        if (!dir.exists() && !dir.mkdir()) throw RuntimeException("Failed to create settings dir")
+    }
+
+    private fun readFile(): JSONObject {
         val file = File(settingsFile)
+        fileModified = file.lastModified()
+        fileLength = file.length()
         if (file.exists()) {
             val read = file.readText()
-            if (read != "") return@lazy JSONObject(read)
+            if (read != "") return JSONObject(read)
         }
-        JSONObject()
+        return JSONObject()
     }
 
-    init {
-        val dir = File(settingsPath)
-        if (!dir.exists() && !dir.mkdir()) throw RuntimeException("Failed to create settings dir")
+    /** Reloads the settings if the file was changed by something else than this instance, e.g. a backup restore */
+    private fun onFileChanged() {
+        synchronized(fileLock) {
+            val file = File(settingsFile)
+            if (file.lastModified() == fileModified && file.length() == fileLength) return
+            synchronized(this) {
+                // Pending changes win, the next write replaces the file anyway
+                if (loaded == null || dirty) return
+                try {
+                    loaded = readFile()
+                } catch (e: Throwable) {
+                    logger.warn("Failed to reload settings $fileName", e)
+                    return
+                }
+                invalidateAll()
+            }
+        }
     }
 
+    @Synchronized
+    private fun invalidate(key: String) {
+        modCount++
+        cache.remove(key)?.values?.forEach { cacheSize.addAndGet(-it.size) }
+    }
+
+    @Synchronized
+    private fun invalidateAll() {
+        modCount++
+        cache.values.forEach { objects -> objects.values.forEach { cacheSize.addAndGet(-it.size) } }
+        cache.clear()
+    }
+
+    /** Caches an object deserialised from the value of the key, unless the value changed since [seenModCount] or the cache is full */
+    @Synchronized
+    private fun cacheObject(key: String, type: Type?, value: Any, size: Long, seenModCount: Int) {
+        if (modCount != seenModCount || cacheSize.get() + size > MAX_CACHE_SIZE) return
+        val objects = HashMap(cache[key] ?: emptyMap())
+        objects.put(type, CachedObject(value, size))?.let { cacheSize.addAndGet(-it.size) }
+        cacheSize.addAndGet(size)
+        cache[key] = objects
+    }
+
+    /** Marks the settings as changed. They are written to disk after a short delay, coalescing further changes */
     private fun writeData() {
-        if (settings.length() > 0) {
-            val file = File(settingsFile)
+        if (dirty) return
+        dirty = true
+        SettingsWriter.schedule(this)
+    }
+
+    /**
+     * Immediately writes pending changes to disk, blocking until done.
+     * The file is replaced atomically, so a crash while writing can't corrupt it
+     */
+    override fun flush() {
+        synchronized(fileLock) {
+            val json = synchronized(this) {
+                if (!dirty) return
+                dirty = false
+                SettingsWriter.done(this)
+                val file = File(settingsFile)
+                if (settings.length() == 0 && !file.exists()) return
+                settings.toString(4)
+            }
+
+            val tmp = File("$settingsFile.tmp")
             try {
-                file.writeText(settings.toString(4))
+                FileOutputStream(tmp).use {
+                    it.write(json.toByteArray())
+                    it.fd.sync()
+                }
+                val file = File(settingsFile)
+                if (!tmp.renameTo(file)) throw IOException("Failed to rename temp file")
+                fileModified = file.lastModified()
+                fileLength = file.length()
             } catch (e: Throwable) {
                 logger.error("Failed to save settings", e)
+                tmp.delete()
             }
         }
     }
 
+    companion object {
+        /** Upper bound of the approximate memory used by deserialised objects of all settings */
+        private const val MAX_CACHE_SIZE = 4L * 1024 * 1024
+        private val cacheSize = AtomicLong()
+
+        private val instances = ConcurrentHashMap<String, SettingsUtilsJSON>()
+        @Suppress("DEPRECATION") // The File constructor requires API 29
+        private val observer by lazy {
+            object : FileObserver(Constants.SETTINGS_PATH, FileObserver.CLOSE_WRITE or FileObserver.MOVED_TO or FileObserver.DELETE) {
+                override fun onEvent(event: Int, path: String?) {
+                    instances[path ?: return]?.onFileChanged()
+                }
+            }.apply { startWatching() }
+        }
+
+        private fun watch(settings: SettingsUtilsJSON) {
+            instances[settings.fileName] = settings
+            observer
+        }
+
+        /** Approximate memory in bytes used by cached deserialised objects of all settings */
+        @JvmStatic
+        fun getCacheSize() = cacheSize.get()
+
+        /** Immediately writes the pending changes of all settings to disk, blocking until done */
+        @JvmStatic
+        fun flushAll() = SettingsWriter.flushAll()
+
+        /** Writes the pending changes of all settings to disk on the settings writer thread, without waiting for the delay */
+        @JvmStatic
+        fun flushAllAsync() = SettingsWriter.flushAllAsync()
+    }
+
     /**
      * Resets All Settings
      * @return true if successful, else false
      */
-    fun resetFile() = File(settingsFile).delete()
+    override fun resetFile(): Boolean {
+        val (deleted, keys) = synchronized(fileLock) {
+            val keys = synchronized(this) {
+                dirty = false
+                SettingsWriter.done(this)
+                invalidateAll()
+                val old = loaded
+                if (old != null) loaded = JSONObject()
+                old?.keys()?.asSequence()?.toSet()
+            }
+            fileModified = 0
+            fileLength = 0
+            File(settingsFile).delete() to keys
+        }
+        if (!keys.isNullOrEmpty()) listeners.notify(keys)
+        return deleted
+    }
 
     /**
      * Toggles Boolean and returns it
@@ -55,7 +215,7 @@ class SettingsUtilsJSON(plugin: String) {
      * @param defVal Default Value if setting doesn't exist
      * @return Toggled boolean
      */
-    fun toggleBool(key: String, defVal: Boolean): Boolean {
+    override fun toggleBool(key: String, defVal: Boolean): Boolean {
         getBool(key, !defVal).also {
             setBool(key, !it)
             return !it
@@ -67,10 +227,14 @@ class SettingsUtilsJSON(plugin: String) {
      * @param key Key of the value
      * @return True if removed, else false
      */
-    @Synchronized
-    fun remove(key: String): Boolean {
-        val bool = settings.remove(key) != null
-        writeData()
+    override fun remove(key: String): Boolean {
+        val bool = synchronized(this) {
+            val bool = settings.remove(key) != null
+            invalidate(key)
+            writeData()
+            bool
+        }
+        if (bool) listeners.notify(key)
         return bool
     }
 
@@ -78,7 +242,7 @@ class SettingsUtilsJSON(plugin: String) {
      * Gets All Keys from settings
      * @return List of all keys
      */
-    fun getAllKeys(): List<String> {
+    override fun getAllKeys(): List<String> {
         val iterator: Iterator<String> = settings.keys()
         val copy: MutableList<String> = ArrayList()
         while (iterator.hasNext()) copy.add(iterator.next())
@@ -90,7 +254,7 @@ class SettingsUtilsJSON(plugin: String) {
      * @param key Key of the value
      * @return True if found, else false
      */
-    fun exists(key: String): Boolean = settings.has(key)
+    override fun exists(key: String): Boolean = settings.has(key)
 
     /**
      * Get a boolean from the preferences
@@ -98,14 +262,14 @@ class SettingsUtilsJSON(plugin: String) {
      * @param defValue Default value
      * @return Value if found, else the defValue
      */
-    fun getBool(key: String, defValue: Boolean) = if (settings.has(key)) settings.getBoolean(key) else defValue
+    override fun getBool(key: String, defValue: Boolean) = settings.let { if (it.has(key)) it.getBoolean(key) else defValue }
 
     /**
      * Set a boolean item
      * @param key Key of the item
      * @param value Value
      */
-    fun setBool(key: String, value: Boolean) = putObject(key, value)
+    override fun setBool(key: String, value: Boolean) = putObject(key, value)
 
     /**
      * Get an int from the preferences
@@ -113,21 +277,51 @@ class SettingsUtilsJSON(plugin: String) {
      * @param defValue Default value
      * @return Value if found, else the defValue
      */
-    fun getInt(key: String, defValue: Int) =
-        if (settings.has(key)) settings.getInt(key) else defValue
+    override fun getInt(key: String, defValue: Int) =
+        settings.let { if (it.has(key)) it.getInt(key) else defValue }
 
-    @Synchronized
     private fun putObject(key: String, value: Any?) {
+        putLocked(key, value)
+        listeners.notify(key)
+    }
+
+    @Synchronized
+    private fun putLocked(key: String, value: Any?) {
         settings.put(key, value)
+        invalidate(key)
         writeData()
     }
 
+    override fun putAll(changes: Map<String, Any?>) {
+        if (changes.isEmpty()) return
+        val values = changes.mapValues { (_, value) -> toJsonValue(value) }
+        synchronized(this) {
+            // Apply the changes to a copy and swap it in, so readers never see only part of them
+            val old = settings
+            val copy = JSONObject()
+            for (key in old.keys()) copy.put(key, old.get(key))
+            values.forEach { (key, value) -> copy.put(key, value) }
+            loaded = copy
+            changes.keys.forEach(::invalidate)
+            writeData()
+        }
+        listeners.notify(changes.keys)
+    }
+
+    override fun addChangeListener(listener: SettingsChangeListener) {
+        listeners.add(listener)
+    }
+
+    override fun removeChangeListener(listener: SettingsChangeListener) {
+        listeners.remove(listener)
+    }
+
     /**
      * Set an int item
      * @param key Key of the item
      * @param value Value
      */
-    fun setInt(key: String, value: Int) = putObject(key, value)
+    override fun setInt(key: String, value: Int) = putObject(key, value)
 
     /**
      * Get a float from the preferences
@@ -135,15 +329,15 @@ class SettingsUtilsJSON(plugin: String) {
      * @param defValue Default value
      * @return Value if found, else the defValue
      */
-    fun getFloat(key: String, defValue: Float) =
-        if (settings.has(key)) BigDecimal.valueOf(settings.getDouble(key)).toFloat() else defValue
+    override fun getFloat(key: String, defValue: Float) =
+        settings.let { if (it.has(key)) BigDecimal.valueOf(it.getDouble(key)).toFloat() else defValue }
 
     /**
      * Set a float item
      * @param key Key of the item
      * @param value Value
      */
-    fun setFloat(key: String, value: Float) = putObject(key, value)
+    override fun setFloat(key: String, value: Float) = putObject(key, value)
 
     /**
      * Get a long from the preferences
@@ -151,14 +345,14 @@ class SettingsUtilsJSON(plugin: String) {
      * @param defValue Default value
      * @return Value if found, else the defValue
      */
-    fun getLong(key: String, defValue: Long) = if (settings.has(key)) settings.getLong(key) else defValue
+    override fun getLong(key: String, defValue: Long) = settings.let { if (it.has(key)) it.getLong(key) else defValue }
 
     /**
      * Set a long item
      * @param key Key of the item
      * @param value Value
      */
-    fun setLong(key: String, value: Long) = putObject(key, value)
+    override fun setLong(key: String, value: Long) = putObject(key, value)
 
     /**
      * Get a [String] from the preferences
@@ -166,15 +360,15 @@ class SettingsUtilsJSON(plugin: String) {
      * @param defValue Default value
      * @return Value if found, else the defValue
      */
-    fun getString(key: String, defValue: String?) =
-        if (settings.has(key)) settings.getString(key) else defValue
+    override fun getString(key: String, defValue: String?) =
+        settings.let { if (it.has(key)) it.getString(key) else defValue }
 
     /**
      * Set a [String] item
      * @param key Key of the item
      * @param value Value
      */
-    fun setString(key: String, value: String?) = putObject(key, value)
+    override fun setString(key: String, value: String?) = putObject(key, value)
 
     /**
      * Get a [JSONObject] item
@@ -183,7 +377,7 @@ class SettingsUtilsJSON(plugin: String) {
      * @return Value if found, else the defValue
      */
     fun getJSONObject(key: String, defValue: JSONObject?) =
-        if (settings.has(key)) settings.getJSONObject(key) else defValue
+        settings.let { if (it.has(key)) it.getJSONObject(key) else defValue }
 
     /**
      * Set a [JSONObject] item
@@ -193,7 +387,8 @@ class SettingsUtilsJSON(plugin: String) {
     fun setJSONObject(key: String, value: JSONObject) = putObject(key, value)
 
     /**
-     * Get an [Object] from the preferences
+     * Get an [Object] from the preferences. The returned object is cached and returned again by later calls,
+     * so don't modify it without passing it to [setObject] afterwards
      * @param key Key of the value
      * @param defValue Default value
      * @return Value if found, else the defValue
@@ -201,21 +396,26 @@ class SettingsUtilsJSON(plugin: String) {
     fun <T> getObject(key: String, defValue: T): T = getObject(key, defValue, defValue!!::class.java)
 
     /**
-     * Get an [Object] from the preferences
+     * Get an [Object] from the preferences. The returned object is cached and returned again by later calls,
+     * so don't modify it without passing it to [setObject] afterwards
      * @param key Key of the value
      * @param defValue Default value
      * @param type Type of the object
      * @return Value if found, else the defValue
      */
     @Suppress("UNCHECKED_CAST")
-    fun <T> getObject(key: String, defValue: T, type: Type?): T {
-        val cached = cache[key]
-        if (cached != null) try {
-            return cached as T
-        } catch (ignored: Throwable) {
+    override fun <T> getObject(key: String, defValue: T, type: Type?): T {
+        cache[key]?.get(type)?.let { return it.value as T }
+
+        var seenModCount = 0
+        val json = synchronized(this) {
+            if (!settings.has(key)) return defValue
+            seenModCount = modCount
+            settings.getString(key)
         }
-        val t: T? = if (settings.has(key)) gson.fromJson(settings.getString(key), type) else null
-        return t ?: defValue
+        val t: T = gson.fromJson(json, type) ?: return defValue
+        cacheObject(key, type, t as Any, json.length * 2L, seenModCount)
+        return t
     }
 
     /**
@@ -223,9 +423,23 @@ class SettingsUtilsJSON(plugin: String) {
      * @param key Key of the item
      * @param value Value
      */
-    fun setObject(key: String, value: Any) {
-        cache[key] = value
+    override fun setObject(key: String, value: Any) {
         val stringJson = gson.toJson(value)
-        putObject(key, if (stringJson.startsWith("{")) JSONObject(stringJson) else JSONArray(stringJson))
+        synchronized(this) {
+            // The value isn't cached, as the caller may keep modifying it
+            putLocked(key, if (stringJson.startsWith("{")) JSONObject(stringJson) else JSONArray(stringJson))
+        }
+        listeners.notify(key)
+    }
+
+    override fun getUnknown(key: String): Any? = when (val value = settings.opt(key)) {
+        JSONObject.NULL -> null
+        is JSONObject, is JSONArray -> getObject<Any?>(key, null, Any::class.java)
+        else -> value
+    }
+
+    private fun toJsonValue(value: Any?): Any? = when (value) {
+        null, is Boolean, is Int, is Long, is Float, is String -> value
+        else -> gson.toJson(value).let { if (it.startsWith("{")) JSONObject(it) else JSONArray(it) }
     }
 }
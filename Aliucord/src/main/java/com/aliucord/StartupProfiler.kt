@@ -0,0 +1,149 @@
+/*
+ * This file is part of Aliucord, an Android Discord client mod.
+ * Copyright (c) 2024 Juby210 & Vendicated
+ * Licensed under the Open Software License version 3.0
+ */
+
+package com.aliucord
+
+import com.aliucord.patcher.Patcher
+import com.aliucord.utils.GsonUtils.gsonPretty
+import com.aliucord.utils.GsonUtils.toJson
+import com.aliucord.utils.ReflectUtils
+import java.io.File
+import java.util.*
+
+/**
+ * Records how long each phase of Aliucord's startup takes, both globally and per plugin.
+ * Once startup is done, the trace is written to [TRACE_PATH] and can be viewed in the Startup Profiler settings page.
+ */
+object StartupProfiler {
+    /** Path the trace of the last startup is saved to */
+    @JvmField
+    val TRACE_PATH = Constants.BASE_PATH + "/startup.json"
+
+    /**
+     * A running span, created by [begin] and recorded by [end]
+     *
+     * @param name Name of the phase, e.g. `load`
+     * @param plugin Name of the plugin this span belongs to, or null for global phases
+     */
+    class Span internal constructor(val name: String, @JvmField var plugin: String?) {
+        internal val start = System.nanoTime()
+        internal val patchesBefore = Patcher.getPatchCount()
+    }
+
+    /**
+     * A finished span
+     *
+     * @param name Name of the phase
+     * @param plugin Name of the plugin this span belongs to, or null for global phases
+     * @param startNanos Start of this span, relative to the start of the trace
+     * @param durationNanos Duration of this span
+     * @param patches Amount of patches added during this span
+     */
+    data class SpanData(
+        val name: String,
+        val plugin: String?,
+        val startNanos: Long,
+        val durationNanos: Long,
+        val patches: Int,
+    )
+
+    /**
+     * A finished startup trace
+     *
+     * @param timestamp Time the trace was finished at, in milliseconds since the epoch
+     * @param totalNanos Time from the first to the end of the last span
+     */
+    data class Trace(
+        val timestamp: Long,
+        val aliucordVersion: String,
+        val discordVersion: Int,
+        val totalNanos: Long,
+        val spans: List<SpanData>,
+    )
+
+    private class RecordedSpan(val name: String, val plugin: String?, val start: Long, val end: Long, val patches: Int)
+
+    private val spans = Collections.synchronizedList(ArrayList<RecordedSpan>())
+
+    @Volatile
+    private var finished = false
+
+    /** The trace of this startup, available once startup finished */
+    @JvmStatic
+    var trace: Trace? = null
+        private set
+
+    /**
+     * Starts a span. Finish it with [end]
+     *
+     * @param name Name of the phase
+     * @param plugin Name of the plugin this span belongs to, or null for global phases
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun begin(name: String, plugin: String? = null) = Span(name, plugin)
+
+    /**
+     * Ends and records a span. Does nothing once startup finished
+     */
+    @JvmStatic
+    fun end(span: Span) {
+        if (finished) return
+        spans.add(RecordedSpan(span.name, span.plugin, span.start, System.nanoTime(), Patcher.getPatchCount() - span.patchesBefore))
+    }
+
+    /**
+     * Records a span that was measured elsewhere, for example by the injector
+     */
+    @JvmStatic
+    fun record(name: String, plugin: String?, startNanos: Long, endNanos: Long) {
+        if (finished || startNanos == 0L || endNanos < startNanos) return
+        spans.add(RecordedSpan(name, plugin, startNanos, endNanos, 0))
+    }
+
+    /** Records the time the injector took to add Aliucord to the classpath, if the injector is new enough to measure it */
+    internal fun recordInjector() {
+        try {
+            val c = Class.forName("com.aliucord.injector.InjectorKt")
+            record(
+                "injector.addDexToClasspath",
+                null,
+                ReflectUtils.getField(c, null, "addDexToClasspathStart") as Long,
+                ReflectUtils.getField(c, null, "addDexToClasspathEnd") as Long
+            )
+        } catch (ignored: ReflectiveOperationException) {
+        }
+    }
+
+    /**
+     * Finishes the trace and saves it to [TRACE_PATH]. Spans ended afterwards are ignored
+     */
+    @JvmStatic
+    fun finish() {
+        if (finished) return
+        finished = true
+
+        val recorded = synchronized(spans) { spans.sortedBy { it.start } }
+        if (recorded.isEmpty()) return
+        val origin = recorded.first().start
+        val trace = Trace(
+            System.currentTimeMillis(),
+            BuildConfig.VERSION,
+            Constants.DISCORD_VERSION,
+            recorded.maxOf { it.end } - origin,
+            recorded.map { SpanData(it.name, it.plugin, it.start - origin, it.end - it.start, it.patches) }
+        ).also { trace = it }
+        spans.clear()
+
+        Utils.threadPool.execute {
+            try {
+                File(TRACE_PATH).writeText(gsonPretty.toJson(trace))
+            } catch (e: Throwable) {
+                Main.logger.error("Failed to save startup trace", e)
+            }
+        }
+    }
+}
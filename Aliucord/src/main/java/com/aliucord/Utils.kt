@@ -562,6 +562,7 @@ Consider installing the MiXplorer file manager, or navigate to $path manually us
             val ctx = it.context
             val intent = ctx.packageManager.getLaunchIntentForPackage(ctx.packageName)
             appActivity.startActivity(Intent.makeRestartActivityTask(intent!!.component))
+            SettingsUtilsJSON.flushAll()
             exitProcess(0)
         }
         bar.show()
@@ -14,8 +14,8 @@ import com.discord.stores.StoreStream
 import com.discord.utilities.websocket.RawMessageHandler
 import com.discord.utilities.websocket.WebSocket
 import com.google.gson.reflect.TypeToken
-import com.google.gson.stream.JsonReader
-import java.io.StringReader
+import java.lang.reflect.Type
+import java.util.concurrent.CopyOnWriteArrayList
 
 /**
  * Api for easily listening to gateway events
@@ -34,28 +34,36 @@ object GatewayAPI {
      * @param eventName Name of the event to listen to
      * @param type The type to serialize the event data into
      * @param listener Callback for the incoming event
+     * @param sync Whether the listener is called on the gateway thread instead of [GatewayDispatcher]
      */
     @PublishedApi
     internal data class RegisteredEventListener<T: Any>(
         val eventName: String,
         val type: Class<*>,
-        val listener: EventListener<T>
-    )
+        val listener: EventListener<T>,
+        val sync: Boolean
+    ) {
+        // Used by plugins compiled before listeners could be synchronous, since onEvent is inlined
+        constructor(eventName: String, type: Class<*>, listener: EventListener<T>) : this(eventName, type, listener, false)
+    }
 
     /**
-     * Model used to extract the name from a gateway event, this is done before we know what type to deserialize data into
-     * which is why [EventData] is separated
-     *
-     * @param name The name of the event
+     * What happens when an event arrives while the queue of its event type is full, see [queueCapacity]
      */
-    private data class EventName(
-        @SerializedName("t") val name: String
-    )
+    enum class OverflowPolicy {
+        /** Block the gateway thread until there is space in the queue. No events are lost */
+        BLOCK,
+        /** Drop the oldest queued event of the type */
+        DROP_OLDEST,
+        /** Drop the event that arrived */
+        DROP_NEWEST,
+        /** Deliver the event on the gateway thread. It may be delivered before the events that are still queued */
+        CALLER_RUNS
+    }
 
     /**
-     * Model used to deserialize event data
-     *
-     * @see EventName for why this isn't a combined model
+     * Model used to deserialize event data. The event name is read with [GatewayFrames] beforehand, so frames
+     * nobody listens to aren't parsed at all
      *
      * @param T The type to deserialize data into, usually specified by a plugin
      * @param data The deserialized data
@@ -64,9 +72,101 @@ object GatewayAPI {
         @SerializedName("d") val data: T
     )
 
+    /**
+     * Listeners of an event that deserialise it into the same type, so it only has to be deserialised once for all of them.
+     * If there are sync listeners, the event is deserialised on the gateway thread and the result is reused for the async ones
+     *
+     * @param type The [EventData] type to deserialize the event into
+     * @param sync Listeners called on the gateway thread
+     * @param async Listeners called by [GatewayDispatcher]
+     */
+    private class ListenerGroup(val type: Type, val sync: List<EventListener<Any>>, val async: List<EventListener<Any>>)
+
+    /** Listeners of an event. Raw listeners are split by whether they are called on the gateway thread or by [GatewayDispatcher] */
+    private class EventListeners(
+        val groups: List<ListenerGroup>,
+        val rawSync: List<(String) -> Unit>,
+        val rawAsync: List<(String) -> Unit>
+    ) {
+        val hasAsync = rawAsync.isNotEmpty() || groups.any { it.async.isNotEmpty() }
+    }
+
+    /** Listener of the Java [onEvent] overload. Keeps the plugin's listener, so [GatewayMetrics] can attribute it to the plugin */
+    private class TypedListener<T>(val listener: (T) -> Unit) : EventListener<Any> {
+        @Suppress("UNCHECKED_CAST")
+        override fun invoke(eventData: Any) = listener(eventData as T)
+    }
+
+    /** A raw listener registered for specific events */
+    private class NamedRawListener(val eventName: String, val listener: (String) -> Unit, val sync: Boolean)
+
+    /** Listeners registered with [onEvent]. Changing it rebuilds [dispatchTable] */
+    private class EventListenerList : AbstractMutableList<RegisteredEventListener<Any>>() {
+        val list = ArrayList<RegisteredEventListener<Any>>()
+
+        override val size get() = list.size
+        override fun get(index: Int) = list[index]
+
+        override fun add(index: Int, element: RegisteredEventListener<Any>) = synchronized(GatewayAPI) {
+            list.add(index, element)
+            rebuildDispatchTable()
+        }
+
+        override fun removeAt(index: Int) = synchronized(GatewayAPI) {
+            list.removeAt(index).also { rebuildDispatchTable() }
+        }
+
+        override fun set(index: Int, element: RegisteredEventListener<Any>) = synchronized(GatewayAPI) {
+            list.set(index, element).also { rebuildDispatchTable() }
+        }
+    }
+
     @PublishedApi
-    internal val registeredEventListeners = mutableListOf<RegisteredEventListener<Any>>()
-    private val rawListeners = mutableListOf<EventListener<String>>()
+    internal val registeredEventListeners: MutableList<RegisteredEventListener<Any>> = EventListenerList()
+    private val rawListeners = CopyOnWriteArrayList<EventListener<String>>()
+    private val asyncRawListeners = CopyOnWriteArrayList<EventListener<String>>()
+    private val namedRawListeners = mutableListOf<NamedRawListener>()
+
+    /**
+     * Listeners by event name. Names are matched against the raw frame by hash and content, so looking them up doesn't
+     * need to copy the name out of the frame
+     */
+    private class DispatchTable(val names: Array<String>, val listeners: Array<EventListeners>) {
+        private val hashes = IntArray(names.size) { names[it].hashCode() }
+
+        /** @return Index of the event name in the frame region, or -1 if nobody listens to it */
+        fun find(json: String, start: Int, end: Int): Int {
+            val hash = GatewayFrames.hash(json, start, end)
+            val length = end - start
+            for (i in names.indices) {
+                if (hashes[i] == hash && names[i].length == length && json.regionMatches(start, names[i], 0, length)) return i
+            }
+            return -1
+        }
+    }
+
+    /** Replaced instead of modified, so dispatching needs no filtering or locking */
+    @Volatile
+    private var dispatchTable = DispatchTable(emptyArray(), emptyArray())
+    private val eventDataTypes = HashMap<Class<*>, Type>()
+
+    /** Maximum amount of queued events per event type for listeners that aren't synchronous. See [overflowPolicy] */
+    @JvmStatic
+    @Volatile
+    var queueCapacity = 1024
+        set(value) {
+            field = value.coerceAtLeast(1)
+        }
+
+    /** What happens when an event arrives while the queue of its type is full */
+    @JvmStatic
+    @Volatile
+    var overflowPolicy = OverflowPolicy.BLOCK
+
+    /** Queue name of listeners to all events, event names are never empty */
+    private const val ALL_EVENTS = ""
+    /** Event name listeners to all events are recorded as in [GatewayMetrics] */
+    private const val ALL_EVENTS_METRICS_NAME = "*"
     private val socket by lazyField<StoreGatewayConnection>()
     private val logger = Logger("GatewayAPI")
     private val patcher = PatcherAPI(logger)
@@ -84,12 +184,34 @@ object GatewayAPI {
     @PublishedApi
     internal fun String.asEventName() = uppercase().replace(" ", "_")
 
-    @Suppress("InconsistentCommentForJavaParameter")
-    private fun getEventName(json: String): String {
-        return InboundGatewayGsonParser.fromJson(
-            /* jsonReader = */ JsonReader(StringReader(json)),
-            /* aClass = */ EventName::class.java
-        ).name
+    private fun getEventDataType(type: Class<*>) = eventDataTypes.getOrPut(type) {
+        TypeToken.getParameterized(EventData::class.java, type).type
+    }
+
+    private fun List<RegisteredEventListener<Any>>.toGroups() = groupBy { it.type }.map { (type, group) ->
+        val (sync, async) = group.partition { it.sync }
+        ListenerGroup(getEventDataType(type), sync.map { it.listener }, async.map { it.listener })
+    }
+
+    @Synchronized
+    private fun rebuildDispatchTable() {
+        val listeners = (registeredEventListeners as EventListenerList).list
+        val names = listeners.map { it.eventName } + namedRawListeners.map { it.eventName }
+        val distinct = names.distinct()
+        dispatchTable = DispatchTable(distinct.toTypedArray(), distinct.map { name ->
+            val (rawSync, rawAsync) = namedRawListeners.filter { it.eventName == name }.partition { it.sync }
+            EventListeners(listeners.filter { it.eventName == name }.toGroups(), rawSync.map { it.listener }, rawAsync.map { it.listener })
+        }.toTypedArray())
+    }
+
+    /**
+     * Finds the listeners of a frame
+     *
+     * @return Index of the event in [table], or -1 if the frame isn't an event or nobody listens to it
+     */
+    private fun findEvent(table: DispatchTable, json: String): Int {
+        val start = GatewayFrames.findEventName(json)
+        return if (start == -1) -1 else table.find(json, start, GatewayFrames.stringEnd(json, start))
     }
 
     private fun addRawMessageHandler() {
@@ -102,43 +224,134 @@ object GatewayAPI {
 
     private fun patchRawMessageHandler() {
         patcher.after<`GatewaySocket$connect$$inlined$apply$lambda$4`>("onRawMessage", String::class.java) { (_, rawEvent: String) ->
-            if(registeredEventListeners.isNotEmpty()) {
-                val eventName = getEventName(rawEvent)
-
-                registeredEventListeners.filter { (name) -> name == eventName }.forEach { (_, type, listener) ->
-                    try {
-                        val data = InboundGatewayGsonParser.INSTANCE
-                            .gatewayGsonInstance // The underlying Gson is needed in order to use a Type with generics since InboundGatewayGsonParser doesn't have a method for it
-                            .fromJson<EventData<Any>>(
-                                json = rawEvent,
-                                type = TypeToken
-                                    .getParameterized(EventData::class.java, type)
-                                    .type
-                            ).data
-
-                        listener(data)
-                    } catch (e: Throwable) {
-                        logger.error("Failed to serialize data for event: $eventName", e)
+            if (GatewayRecorder.isRecording) GatewayRecorder.record(rawEvent)
+            dispatchFrame(rawEvent)
+        }
+    }
+
+    /**
+     * Delivers a raw gateway frame to all listeners, as if it was received from the gateway.
+     * Used by [GatewayReplayer] to replay recorded frames
+     *
+     * @param rawEvent The raw frame
+     */
+    @JvmStatic
+    fun dispatchFrame(rawEvent: String) {
+        if (GatewayMetrics.enabled) GatewayMetrics.recordFrame(rawEvent)
+
+        val table = dispatchTable
+        if (table.names.isNotEmpty()) {
+            val index = findEvent(table, rawEvent)
+
+            if (index != -1) {
+                val eventName = table.names[index]
+                val listeners = table.listeners[index]
+                val groups = listeners.groups
+                // Data parsed for sync listeners, reused for the async listeners of the same type
+                val parsed = arrayOfNulls<Any>(groups.size)
+                for (i in groups.indices) {
+                    val group = groups[i]
+                    if (group.sync.isEmpty()) continue
+                    parsed[i] = parse(eventName, rawEvent, group.type)
+                    deliver(eventName, parsed[i], group.sync)
+                }
+                listeners.rawSync.forEach { listener -> callRaw(eventName, listener, rawEvent) }
+
+                if (listeners.hasAsync) GatewayDispatcher.submit(eventName) {
+                    for (i in groups.indices) {
+                        val group = groups[i]
+                        if (group.async.isEmpty()) continue
+                        deliver(eventName, if (group.sync.isEmpty()) parse(eventName, rawEvent, group.type) else parsed[i], group.async)
                     }
+                    listeners.rawAsync.forEach { listener -> callRaw(eventName, listener, rawEvent) }
                 }
             }
+        }
 
-            if(rawListeners.isNotEmpty()) {
-                rawListeners.forEach { listener ->
-                    listener(rawEvent)
-                }
+        if(rawListeners.isNotEmpty()) {
+            rawListeners.forEach { listener ->
+                callRaw(ALL_EVENTS_METRICS_NAME, listener, rawEvent)
+            }
+        }
+
+        if (asyncRawListeners.isNotEmpty()) GatewayDispatcher.submit(ALL_EVENTS) {
+            asyncRawListeners.forEach { listener -> callRaw(ALL_EVENTS_METRICS_NAME, listener, rawEvent) }
+        }
+    }
+
+    /** Returned by [parse] if the event couldn't be deserialised */
+    private val PARSE_FAILED = Any()
+
+    /** Deserialises the data of an event into the specified [EventData] type */
+    private fun parse(eventName: String, rawEvent: String, type: Type): Any? {
+        val start = if (GatewayMetrics.enabled) System.nanoTime() else 0L
+        val data = try {
+            InboundGatewayGsonParser.INSTANCE
+                .gatewayGsonInstance // The underlying Gson is needed in order to use a Type with generics since InboundGatewayGsonParser doesn't have a method for it
+                .fromJson<EventData<Any?>>(json = rawEvent, type = type)
+                .data
+        } catch (e: Throwable) {
+            logger.error("Failed to serialize data for event: $eventName", e)
+            return PARSE_FAILED
+        }
+        if (start != 0L) GatewayMetrics.recordParse(eventName, System.nanoTime() - start)
+        return data
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun deliver(eventName: String, data: Any?, listeners: List<EventListener<Any>>) {
+        if (data === PARSE_FAILED) return
+        listeners.forEach { listener ->
+            try {
+                measure(eventName, (listener as? TypedListener<*>)?.listener ?: listener) { (listener as EventListener<Any?>)(data) }
+            } catch (e: Throwable) {
+                logger.error("Listener for event $eventName threw", e)
             }
+        }
+    }
+
+    private fun callRaw(eventName: String, listener: (String) -> Unit, rawEvent: String) = try {
+        measure(eventName, listener) { listener(rawEvent) }
+    } catch (e: Throwable) {
+        logger.error("Raw listener for event $eventName threw", e)
+    }
+
+    private fun callRaw(eventName: String, listener: EventListener<String>, rawEvent: String) = try {
+        measure(eventName, listener) { listener(rawEvent) }
+    } catch (e: Throwable) {
+        logger.error("Raw listener for event $eventName threw", e)
+    }
 
+    /** Runs a listener, recording the time it took in [GatewayMetrics] if enabled */
+    private inline fun measure(eventName: String, listener: Any, block: () -> Unit) {
+        if (!GatewayMetrics.enabled) return block()
+        val start = System.nanoTime()
+        try {
+            block()
+        } finally {
+            GatewayMetrics.recordListener(eventName, listener, System.nanoTime() - start)
         }
     }
 
+    @Synchronized
+    private fun addNamedRawListener(names: List<String>, sync: Boolean, listener: (rawEvent: String) -> Unit) {
+        names.map { it.asEventName() }.distinct().forEach { namedRawListeners.add(NamedRawListener(it, listener, sync)) }
+        rebuildDispatchTable()
+    }
+
     /**
      * Listens to all raw gateway events
      *
+     * By default, listeners are called on a separate thread in the order events arrive, so they can't hold up the gateway.
+     *
+     * @param sync Whether to call the listener on the gateway thread instead, for listeners that must run before the gateway
+     * continues. Keep these fast, the gateway waits for them
      * @param listener The method that gets called when a gateway event is received, it is passed the full event string rather than just the data.
      */
     @JvmStatic
-    fun onRawEvent(listener: EventListener<String>) = rawListeners.add(listener)
+    @JvmOverloads
+    fun onRawEvent(sync: Boolean = false, listener: EventListener<String>) =
+        (if (sync) rawListeners else asyncRawListeners).add(listener)
 
     /**
      * Listens to a specific set of gateway events
@@ -146,16 +359,13 @@ object GatewayAPI {
      * See [user docs](https://docs.discord.sex/topics/gateway-events#receive-events) for a list of possible events
      *
      * @param names List of event names to listen to (Case insensitive).
+     * @param sync Whether to call the listener on the gateway thread, see [onRawEvent]
      * @param listener The method that gets called when any of the gateway events are received, it is passed the full event string rather than just the data.
      */
     @JvmStatic
-    fun onRawEvent(names: List<String>, listener: (rawEvent: String) -> Unit) {
-        rawListeners.add(EventListener { eventData ->
-            val namesUpper = names.map { it.asEventName() }
-            val eventName = getEventName(eventData)
-            if (namesUpper.contains(eventName)) listener(eventData)
-        })
-    }
+    @JvmOverloads
+    fun onRawEvent(names: List<String>, sync: Boolean = false, listener: (rawEvent: String) -> Unit) =
+        addNamedRawListener(names, sync, listener)
 
     /**
      * Listens to a specific gateway event
@@ -163,15 +373,23 @@ object GatewayAPI {
      * See [user docs](https://docs.discord.sex/topics/gateway-events#receive-events) for a list of possible events
      *
      * @param name The name of the event (Case insensitive).
+     * @param sync Whether to call the listener on the gateway thread, see [onRawEvent]
      * @param listener The method that gets called when the gateway event is received, it is passed the full event string rather than just the data.
      */
     @JvmStatic
-    fun onRawEvent(name: String, listener: (rawEvent: String) -> Unit) {
-        rawListeners.add(EventListener { eventData ->
-            val nameUpper = name.asEventName()
-            val eventName = getEventName(eventData)
-            if (nameUpper == eventName) listener(eventData)
-        })
+    @JvmOverloads
+    fun onRawEvent(name: String, sync: Boolean = false, listener: (rawEvent: String) -> Unit) =
+        addNamedRawListener(listOf(name), sync, listener)
+
+    /**
+     * Removes a listener added via [onRawEvent] for specific gateway events
+     *
+     * @param listener The listener
+     */
+    @JvmStatic
+    @Synchronized
+    fun removeRawListener(listener: (rawEvent: String) -> Unit) {
+        if (namedRawListeners.removeAll { it.listener === listener }) rebuildDispatchTable()
     }
 
     /**
@@ -180,15 +398,17 @@ object GatewayAPI {
      * See [user docs](https://docs.discord.sex/topics/gateway-events#receive-events) for a list of possible events
      *
      * @param name The name of the event (Case insensitive).
+     * @param sync Whether to call the listener on the gateway thread, see [onRawEvent]. Events are then also deserialized on it
      * @param listener The method that gets called when the gateway event is received, it is passed a deserialized model of type [T].
      */
-    inline fun <reified T : Any> onEvent(name: String, crossinline listener: (T) -> Unit) {
+    inline fun <reified T : Any> onEvent(name: String, sync: Boolean = false, crossinline listener: (T) -> Unit) {
         val eventListener = EventListener<Any> { eventData -> listener(eventData as T) }
         registeredEventListeners.add(
             RegisteredEventListener(
                 eventName = name.asEventName(),
                 type = T::class.java,
-                listener = eventListener
+                listener = eventListener,
+                sync = sync
             )
         )
     }
@@ -200,18 +420,19 @@ object GatewayAPI {
      *
      * @param name The name of the event (Case insensitive).
      * @param clazz The type that the event's data should be deserialized to.
+     * @param sync Whether to call the listener on the gateway thread, see [onRawEvent]. Events are then also deserialized on it
      * @param listener The method that gets called when the gateway event is received, it is passed an instance of [clazz].
      */
     // This overload is mostly just for Java plugins, since Java doesn't have reified type parameters
     @JvmStatic
-    @Suppress("UNCHECKED_CAST")
-    fun <T> onEvent(name: String, clazz: Class<T>, listener: (T) -> Unit) {
-        val eventListener = EventListener<Any> { eventData -> listener(eventData as T) }
+    @JvmOverloads
+    fun <T> onEvent(name: String, clazz: Class<T>, sync: Boolean = false, listener: (T) -> Unit) {
         registeredEventListeners.add(
             RegisteredEventListener(
                 eventName = name.asEventName(),
                 type = clazz,
-                listener = eventListener
+                listener = TypedListener(listener),
+                sync = sync
             )
         )
     }
@@ -0,0 +1,111 @@
+/*
+ * This file is part of Aliucord, an Android Discord client mod.
+ * Copyright (c) 2024 Juby210 & Vendicated
+ * Licensed under the Open Software License version 3.0
+ */
+
+package com.aliucord.api
+
+import com.aliucord.Logger
+import com.aliucord.api.GatewayAPI.OverflowPolicy
+import java.util.ArrayDeque
+import java.util.concurrent.*
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Runs asynchronous [GatewayAPI] listeners off the gateway thread. Events are queued per event name and each queue is
+ * processed in order by one thread at a time, so listeners see events of the same type in the order they arrived,
+ * while a slow listener only holds up its own event type.
+ */
+internal object GatewayDispatcher {
+    private const val THREADS = 2
+    /** Amount of events processed from one queue before giving other queues a turn */
+    private const val BATCH_SIZE = 32
+
+    private class EventQueue {
+        val tasks = ArrayDeque<Runnable>()
+        var running = false
+    }
+
+    private val logger = Logger("GatewayAPI")
+    private val threadCount = AtomicInteger()
+    private val pool = ThreadPoolExecutor(
+        THREADS, THREADS,
+        30, TimeUnit.SECONDS,
+        LinkedBlockingQueue(),
+        { Thread(it, "Aliucord Gateway #" + threadCount.incrementAndGet()).apply { isDaemon = true } }
+    ).apply { allowCoreThreadTimeOut(true) }
+
+    /** Queues by event name. They are kept once created, there are only few event names */
+    private val queues = HashMap<String, EventQueue>()
+    private val lock = ReentrantLock()
+    private val notFull = lock.newCondition()
+    private var dropped = 0
+
+    /**
+     * Queues a task that delivers an event
+     *
+     * @param eventName Name of the event, tasks with the same name run in order
+     * @param task Delivers the event to its listeners
+     */
+    fun submit(eventName: String, task: Runnable) {
+        lock.withLock {
+            val queue = queues.getOrPut(eventName) { EventQueue() }
+            var callerRuns = false
+            loop@ while (queue.tasks.size >= GatewayAPI.queueCapacity) {
+                when (GatewayAPI.overflowPolicy) {
+                    OverflowPolicy.BLOCK -> notFull.await()
+                    OverflowPolicy.DROP_OLDEST -> {
+                        queue.tasks.poll()
+                        onDropped(eventName)
+                    }
+                    OverflowPolicy.DROP_NEWEST -> {
+                        onDropped(eventName)
+                        return
+                    }
+                    OverflowPolicy.CALLER_RUNS -> {
+                        callerRuns = true
+                        break@loop
+                    }
+                }
+            }
+
+            if (!callerRuns) {
+                queue.tasks.add(task)
+                if (!queue.running) {
+                    queue.running = true
+                    pool.execute { drain(eventName, queue) }
+                }
+                return
+            }
+        }
+        run(eventName, task)
+    }
+
+    private fun drain(eventName: String, queue: EventQueue) {
+        for (i in 0 until BATCH_SIZE) {
+            val task = lock.withLock {
+                queue.tasks.poll().also {
+                    if (it == null) queue.running = false
+                    else notFull.signalAll()
+                }
+            } ?: return
+            run(eventName, task)
+        }
+        pool.execute { drain(eventName, queue) }
+    }
+
+    private fun run(eventName: String, task: Runnable) {
+        try {
+            task.run()
+        } catch (e: Throwable) {
+            logger.error("Failed to dispatch event $eventName", e)
+        }
+    }
+
+    private fun onDropped(eventName: String) {
+        if (dropped++ % 100 == 0) logger.warn("Gateway event queue for $eventName is full, dropped $dropped events so far")
+    }
+}
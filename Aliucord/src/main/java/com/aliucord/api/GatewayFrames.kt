@@ -0,0 +1,112 @@
+/*
+ * This file is part of Aliucord, an Android Discord client mod.
+ * Copyright (c) 2024 Juby210 & Vendicated
+ * Licensed under the Open Software License version 3.0
+ */
+
+package com.aliucord.api
+
+/**
+ * Reads top level fields of raw gateway frames without parsing them, so frames nobody listens to cost no Gson work.
+ * None of these allocate. Values are located by index into the frame instead of being copied out of it.
+ */
+internal object GatewayFrames {
+    /** Op code of dispatch frames, the only ones carrying an event */
+    const val OP_DISPATCH = 0
+
+    /**
+     * Finds the value of a top level field. Nested objects and arrays are skipped, so the field may be anywhere in the frame
+     *
+     * @param json The raw frame
+     * @param field Name of the field
+     * @return Index of the first character of the value, or -1 if there is no such field
+     */
+    fun findField(json: String, field: String): Int {
+        val n = json.length
+        var depth = 0
+        var expectKey = false
+        var i = 0
+        while (i < n) {
+            when (json[i]) {
+                '"' -> {
+                    val start = i + 1
+                    i = skipString(json, start)
+                    if (depth == 1 && expectKey) {
+                        val length = i - 1 - start
+                        if (length == field.length && json.regionMatches(start, field, 0, length)) return skipSeparator(json, i)
+                        expectKey = false
+                    }
+                    continue
+                }
+                '{' -> if (++depth == 1) expectKey = true
+                '[' -> depth++
+                '}', ']' -> depth--
+                ',' -> if (depth == 1) expectKey = true
+            }
+            i++
+        }
+        return -1
+    }
+
+    /**
+     * Finds the event name of a frame
+     *
+     * @param json The raw frame
+     * @return Index of the first character of the name, or -1 if the frame has no event. The name ends at [stringEnd]
+     */
+    fun findEventName(json: String): Int {
+        val i = findField(json, "t")
+        return if (i != -1 && i < json.length && json[i] == '"') i + 1 else -1
+    }
+
+    /**
+     * Reads the op code of a frame
+     *
+     * @param json The raw frame
+     * @return The op code, or -1 if the frame has none
+     */
+    fun getOp(json: String): Int {
+        var i = findField(json, "op")
+        if (i == -1) return -1
+        var op = 0
+        val start = i
+        while (i < json.length && json[i] in '0'..'9') op = op * 10 + (json[i++] - '0')
+        return if (i == start) -1 else op
+    }
+
+    /**
+     * Finds the end of a string value
+     *
+     * @param json The raw frame
+     * @param start Index of the first character of the string, after the opening quote
+     * @return Index of the closing quote
+     */
+    fun stringEnd(json: String, start: Int) = skipString(json, start) - 1
+
+    /** Hashes a region the same way as [String.hashCode], so it can be compared with hashes of strings */
+    fun hash(json: String, start: Int, end: Int): Int {
+        var h = 0
+        for (i in start until end) h = 31 * h + json[i].code
+        return h
+    }
+
+    /** @return Index after the closing quote of the string starting at [start] */
+    private fun skipString(json: String, start: Int): Int {
+        var i = start
+        while (i < json.length) {
+            when (json[i]) {
+                '\\' -> i += 2
+                '"' -> return i + 1
+                else -> i++
+            }
+        }
+        return json.length
+    }
+
+    /** @return Index of the value after the colon following a key */
+    private fun skipSeparator(json: String, start: Int): Int {
+        var i = start
+        while (i < json.length && (json[i] == ':' || json[i].isWhitespace())) i++
+        return i
+    }
+}
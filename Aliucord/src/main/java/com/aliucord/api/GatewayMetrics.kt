@@ -0,0 +1,179 @@
+/*
+ * This file is part of Aliucord, an Android Discord client mod.
+ * Copyright (c) 2024 Juby210 & Vendicated
+ * Licensed under the Open Software License version 3.0
+ */
+
+package com.aliucord.api
+
+import com.aliucord.PluginManager
+import com.aliucord.utils.GsonUtils.gsonPretty
+import com.aliucord.utils.GsonUtils.toJson
+import dalvik.system.PathClassLoader
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Records what flows through [GatewayAPI]: how many frames and bytes of each event arrive, how long deserialising them
+ * takes and how much time each plugin spends in its listeners. Recording is off by default, as it costs a bit of time
+ * for every frame. It can be enabled and viewed in the Gateway Metrics settings page.
+ */
+object GatewayMetrics {
+    /** Name listeners of Aliucord itself are attributed to */
+    const val ALIUCORD = "Aliucord"
+
+    /**
+     * Totals of an event
+     *
+     * @param name Name of the event, or `op N` for frames that aren't events
+     * @param frames Amount of frames received
+     * @param bytes Total length of the frames
+     * @param parses How often the event was deserialised for listeners
+     * @param parseNanos Total time spent deserialising
+     */
+    data class EventStats(
+        val name: String,
+        val frames: Long,
+        val bytes: Long,
+        val parses: Long,
+        val parseNanos: Long,
+    )
+
+    /**
+     * Time a plugin spent in listeners of an event
+     *
+     * @param event Name of the event
+     * @param calls Amount of listener calls
+     * @param totalNanos Total time spent in the listeners
+     * @param maxNanos Longest listener call
+     */
+    data class ListenerStats(
+        val event: String,
+        val calls: Long,
+        val totalNanos: Long,
+        val maxNanos: Long,
+    )
+
+    /**
+     * Listener totals of a plugin
+     *
+     * @param plugin Name of the plugin, or [ALIUCORD]
+     * @param totalNanos Total time spent in all listeners of the plugin
+     * @param events Breakdown by event
+     */
+    data class PluginStats(
+        val plugin: String,
+        val totalNanos: Long,
+        val events: List<ListenerStats>,
+    )
+
+    /**
+     * Metrics recorded since recording was enabled or [reset]
+     *
+     * @param durationMillis Time metrics were recorded for
+     */
+    data class Snapshot(
+        val durationMillis: Long,
+        val events: List<EventStats>,
+        val plugins: List<PluginStats>,
+    )
+
+    private class EventCounter {
+        var frames = 0L
+        var bytes = 0L
+        var parses = 0L
+        var parseNanos = 0L
+    }
+
+    private class ListenerCounter {
+        var calls = 0L
+        var totalNanos = 0L
+        var maxNanos = 0L
+    }
+
+    private val events = ConcurrentHashMap<String, EventCounter>()
+    /** Listener counters by plugin and event */
+    private val listeners = ConcurrentHashMap<String, ConcurrentHashMap<String, ListenerCounter>>()
+    /** Weak keys so unloaded plugins' class loaders can be collected */
+    private val owners = Collections.synchronizedMap(WeakHashMap<ClassLoader, String>())
+    @Volatile
+    private var since = System.currentTimeMillis()
+
+    /** Whether metrics are recorded */
+    @JvmStatic
+    @Volatile
+    var enabled = false
+        set(value) {
+            if (value && !field) reset()
+            field = value
+        }
+
+    /** Discards all recorded metrics */
+    @JvmStatic
+    fun reset() {
+        events.clear()
+        listeners.clear()
+        since = System.currentTimeMillis()
+    }
+
+    internal fun recordFrame(json: String) {
+        val start = GatewayFrames.findEventName(json)
+        val name = if (start != -1) json.substring(start, GatewayFrames.stringEnd(json, start)) else "op ${GatewayFrames.getOp(json)}"
+        val counter = events.getOrPut(name) { EventCounter() }
+        synchronized(counter) {
+            counter.frames++
+            counter.bytes += json.length
+        }
+    }
+
+    internal fun recordParse(event: String, nanos: Long) {
+        val counter = events.getOrPut(event) { EventCounter() }
+        synchronized(counter) {
+            counter.parses++
+            counter.parseNanos += nanos
+        }
+    }
+
+    /**
+     * Records a listener call
+     *
+     * @param event Name of the event
+     * @param listener The listener, used to find the plugin it belongs to
+     * @param nanos Time spent in the listener
+     */
+    internal fun recordListener(event: String, listener: Any, nanos: Long) {
+        val counter = listeners.getOrPut(getOwner(listener)) { ConcurrentHashMap() }.getOrPut(event) { ListenerCounter() }
+        synchronized(counter) {
+            counter.calls++
+            counter.totalNanos += nanos
+            if (nanos > counter.maxNanos) counter.maxNanos = nanos
+        }
+    }
+
+    /** Finds the plugin a listener belongs to via the class loader of its class */
+    private fun getOwner(listener: Any): String {
+        val loader = listener.javaClass.classLoader ?: return ALIUCORD
+        return owners.getOrPut(loader) {
+            (loader as? PathClassLoader)?.let { PluginManager.classLoaders[it] }?.name ?: ALIUCORD
+        }
+    }
+
+    /** Gets the metrics recorded so far */
+    @JvmStatic
+    fun snapshot() = Snapshot(
+        System.currentTimeMillis() - since,
+        events.entries.map { (name, c) ->
+            synchronized(c) { EventStats(name, c.frames, c.bytes, c.parses, c.parseNanos) }
+        }.sortedByDescending(EventStats::bytes),
+        listeners.entries.map { (plugin, byEvent) ->
+            val stats = byEvent.entries.map { (event, c) ->
+                synchronized(c) { ListenerStats(event, c.calls, c.totalNanos, c.maxNanos) }
+            }.sortedByDescending(ListenerStats::totalNanos)
+            PluginStats(plugin, stats.sumOf(ListenerStats::totalNanos), stats)
+        }.sortedByDescending(PluginStats::totalNanos)
+    )
+
+    /** Gets the metrics recorded so far as JSON */
+    @JvmStatic
+    fun dump(): String = gsonPretty.toJson(snapshot())
+}
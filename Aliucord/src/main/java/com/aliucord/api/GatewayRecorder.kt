@@ -0,0 +1,105 @@
+/*
+ * This file is part of Aliucord, an Android Discord client mod.
+ * Copyright (c) 2024 Juby210 & Vendicated
+ * Licensed under the Open Software License version 3.0
+ */
+
+package com.aliucord.api
+
+import com.aliucord.Constants
+import com.aliucord.Logger
+import java.io.*
+
+/**
+ * Records raw gateway frames to a file, so they can be replayed with [GatewayReplayer] to benchmark gateway listeners
+ * without a live connection. Recordings contain everything received from the gateway, including messages, so only
+ * share them with care.
+ *
+ * The file starts with [MAGIC] and [VERSION], followed by one record per frame: the time since the previous frame in
+ * microseconds and the length of the frame in bytes as unsigned varints, then the frame encoded as UTF-8.
+ */
+object GatewayRecorder {
+    /** Default path recordings are saved to */
+    @JvmField
+    val RECORDING_PATH = Constants.BASE_PATH + "/gateway.rec"
+
+    internal const val MAGIC = 0x41434757 // ACGW
+    internal const val VERSION = 1
+
+    private val logger = Logger("GatewayRecorder")
+    private var out: DataOutputStream? = null
+    private var lastFrameNanos = 0L
+    private var frames = 0
+
+    /** Whether frames are being recorded */
+    @JvmStatic
+    @Volatile
+    var isRecording = false
+        private set
+
+    /**
+     * Starts recording frames, replacing the file if it exists
+     *
+     * @param file File to record to
+     * @throws IOException If the file could not be created
+     */
+    @JvmStatic
+    @JvmOverloads
+    @Synchronized
+    @Throws(IOException::class)
+    fun start(file: File = File(RECORDING_PATH)) {
+        stop()
+        out = DataOutputStream(BufferedOutputStream(FileOutputStream(file), 64 * 1024)).apply {
+            writeInt(MAGIC)
+            writeByte(VERSION)
+        }
+        lastFrameNanos = System.nanoTime()
+        frames = 0
+        isRecording = true
+    }
+
+    /**
+     * Stops recording and closes the file
+     *
+     * @return Amount of frames recorded
+     */
+    @JvmStatic
+    @Synchronized
+    fun stop(): Int {
+        isRecording = false
+        val out = out ?: return 0
+        this.out = null
+        try {
+            out.close()
+        } catch (e: IOException) {
+            logger.error("Failed to save recording", e)
+        }
+        return frames
+    }
+
+    @Synchronized
+    internal fun record(rawEvent: String) {
+        val out = out ?: return
+        val now = System.nanoTime()
+        val bytes = rawEvent.toByteArray(Charsets.UTF_8)
+        try {
+            out.writeVarInt((now - lastFrameNanos) / 1000)
+            out.writeVarInt(bytes.size.toLong())
+            out.write(bytes)
+            lastFrameNanos = now
+            frames++
+        } catch (e: IOException) {
+            logger.error("Failed to record frame, stopping recording", e)
+            stop()
+        }
+    }
+
+    private fun DataOutputStream.writeVarInt(value: Long) {
+        var v = value
+        while (v and 0x7FL.inv() != 0L) {
+            writeByte(((v and 0x7F) or 0x80).toInt())
+            v = v ushr 7
+        }
+        writeByte(v.toInt())
+    }
+}
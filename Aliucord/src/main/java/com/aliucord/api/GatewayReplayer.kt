@@ -0,0 +1,139 @@
+/*
+ * This file is part of Aliucord, an Android Discord client mod.
+ * Copyright (c) 2024 Juby210 & Vendicated
+ * Licensed under the Open Software License version 3.0
+ */
+
+package com.aliucord.api
+
+import java.io.*
+import java.util.Locale
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * Replays frames recorded by [GatewayRecorder], by default through [GatewayAPI.dispatchFrame] so they reach all
+ * registered listeners like live frames would.
+ *
+ * Besides the recorded timing, frames can be replayed faster or slower, at a fixed rate or as fast as possible.
+ * To measure the cost of dispatching on the device, see [benchmarkDispatch].
+ *
+ * @param file The recording
+ */
+class GatewayReplayer(private val file: File) {
+    /**
+     * Result of a replay
+     *
+     * @param frames Amount of frames replayed
+     * @param bytes Total length of the replayed frames
+     * @param elapsedNanos Time the replay took
+     */
+    data class Result(val frames: Long, val bytes: Long, val elapsedNanos: Long) {
+        val framesPerSecond get() = if (elapsedNanos == 0L) 0.0 else frames * 1e9 / elapsedNanos
+
+        override fun toString() =
+            String.format(Locale.ROOT, "%d frames, %d bytes in %.1fms (%.0f frames/s)", frames, bytes, elapsedNanos / 1e6, framesPerSecond)
+    }
+
+    /** Multiplier for the recorded timing, e.g. 2 replays twice as fast. [Double.POSITIVE_INFINITY] ignores the timing */
+    var speed = 1.0
+
+    /** Fixed rate in frames per second. Overrides [speed] if set to more than 0 */
+    var framesPerSecond = 0.0
+
+    /** How often to replay the recording */
+    var loops = 1
+
+    /**
+     * Replays the recording, blocking until done
+     *
+     * @param sink Receives the frames
+     * @throws IOException If the recording could not be read
+     */
+    @JvmOverloads
+    @Throws(IOException::class)
+    fun replay(sink: (String) -> Unit = GatewayAPI::dispatchFrame): Result {
+        var frames = 0L
+        var bytes = 0L
+        val start = System.nanoTime()
+        var due = start
+
+        repeat(loops) {
+            DataInputStream(BufferedInputStream(FileInputStream(file), 64 * 1024)).use { input ->
+                if (input.readInt() != GatewayRecorder.MAGIC || input.readByte().toInt() != GatewayRecorder.VERSION)
+                    throw IOException("${file.name} is not a gateway recording")
+
+                while (true) {
+                    val delayMicros = input.readVarInt() ?: break
+                    val buf = ByteArray(input.readVarInt()?.toInt() ?: break)
+                    input.readFully(buf)
+
+                    due += when {
+                        framesPerSecond > 0 -> (1e9 / framesPerSecond).toLong()
+                        speed.isInfinite() -> 0L
+                        else -> (delayMicros * 1000 / speed).toLong()
+                    }
+                    val wait = due - System.nanoTime()
+                    if (wait > 0) LockSupport.parkNanos(wait)
+
+                    sink(String(buf, Charsets.UTF_8))
+                    frames++
+                    bytes += buf.size
+                }
+            }
+        }
+
+        return Result(frames, bytes, System.nanoTime() - start)
+    }
+
+    /** @return The value, or null at the end of the file */
+    private fun DataInputStream.readVarInt(): Long? {
+        var result = 0L
+        var shift = 0
+        while (true) {
+            val b = read()
+            if (b == -1) {
+                if (shift == 0) return null
+                throw EOFException("Truncated recording")
+            }
+            result = result or ((b and 0x7F).toLong() shl shift)
+            if (b and 0x80 == 0) return result
+            shift += 7
+        }
+    }
+
+    companion object {
+        /**
+         * Replays a recording through [GatewayAPI.dispatchFrame] as fast as possible, with a sync no-op raw listener
+         * registered for every recorded event, so each frame goes through event lookup and listener dispatch.
+         * Listeners registered by plugins run as well, disable them for a clean measurement
+         *
+         * @param file The recording
+         * @param loops How often to replay the recording
+         * @return The result and how often the stub listener was called
+         * @throws IOException If the recording could not be read
+         */
+        @JvmStatic
+        @JvmOverloads
+        @Throws(IOException::class)
+        fun benchmarkDispatch(file: File, loops: Int = 1): Pair<Result, Long> {
+            val names = HashSet<String>()
+            GatewayReplayer(file).apply { speed = Double.POSITIVE_INFINITY }.replay { frame ->
+                val start = GatewayFrames.findEventName(frame)
+                if (start != -1) names.add(frame.substring(start, GatewayFrames.stringEnd(frame, start)))
+            }
+
+            var calls = 0L
+            val stub: (String) -> Unit = { calls++ }
+            GatewayAPI.onRawEvent(names.toList(), true, stub)
+            try {
+                val replayer = GatewayReplayer(file).apply {
+                    speed = Double.POSITIVE_INFINITY
+                    this.loops = loops
+                }
+                return replayer.replay(GatewayAPI::dispatchFrame) to calls
+            } finally {
+                GatewayAPI.removeRawListener(stub)
+            }
+        }
+    }
+}
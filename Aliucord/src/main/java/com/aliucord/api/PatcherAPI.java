@@ -11,8 +11,7 @@ import com.aliucord.Logger;
 import com.aliucord.patcher.*;
 
 import java.lang.reflect.Member;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 import de.robv.android.xposed.XC_MethodHook;
 import rx.functions.Action1;
@@ -21,29 +20,30 @@ import rx.functions.Action1;
 public class PatcherAPI {
     public final Logger logger;
     public List<Runnable> unpatches = new ArrayList<>();
+    /** Unpatches of this API that weren't run yet, to skip searching {@link #unpatches} for removed ones */
+    private final Set<Unpatch> active = new HashSet<>();
 
     public PatcherAPI(Logger logger) {
         this.logger = logger;
     }
 
-    private Runnable createUnpatch(Runnable _unpatch) {
-        Runnable unpatch = new Runnable() {
-            public void run() {
-                _unpatch.run();
-                unpatches.remove(this);
-            }
-        };
-        unpatches.add(unpatch);
-        return unpatch;
+    private final class Unpatch implements Runnable {
+        private final Patch patch;
+
+        Unpatch(Patch patch) {
+            this.patch = patch;
+        }
+
+        public void run() {
+            if (!active.remove(this)) return;
+            patch.unpatch();
+            unpatches.remove(this);
+        }
     }
 
-    private Runnable createUnpatch(XC_MethodHook.Unhook unhook) {
-        Runnable unpatch = new Runnable() {
-            public void run() {
-                unhook.unhook();
-                unpatches.remove(this);
-            }
-        };
+    private Runnable createUnpatch(Patch patch) {
+        var unpatch = new Unpatch(patch);
+        active.add(unpatch);
         unpatches.add(unpatch);
         return unpatch;
     }
@@ -58,7 +58,12 @@ public class PatcherAPI {
      * @return A {@link Runnable} object.
      */
     public Runnable patch(@NonNull String forClass, @NonNull String fn, @NonNull Class<?>[] paramTypes, @NonNull XC_MethodHook hook) {
-        return createUnpatch(Patcher.addPatch(forClass, fn, paramTypes, hook));
+        try {
+            return patch(Class.forName(forClass, false, PatcherAPI.class.getClassLoader()), fn, paramTypes, hook);
+        } catch (Throwable e) {
+            Patcher.logger.error(e);
+            return () -> {};
+        }
     }
 
     /**
@@ -71,7 +76,12 @@ public class PatcherAPI {
      * @return Method that will remove the patch when invoked
      */
     public Runnable patch(@NonNull Class<?> clazz, @NonNull String fn, @NonNull Class<?>[] paramTypes, @NonNull XC_MethodHook hook) {
-        return createUnpatch(Patcher.addPatch(clazz, fn, paramTypes, hook));
+        try {
+            return patch(clazz.getDeclaredMethod(fn, paramTypes), hook);
+        } catch (Throwable e) {
+            Patcher.logger.error(e);
+            return () -> {};
+        }
     }
 
     /**
@@ -82,7 +92,7 @@ public class PatcherAPI {
      * @return Method that will remove the patch when invoked
      */
     public Runnable patch(@NonNull Member m, @NonNull XC_MethodHook hook) {
-        return createUnpatch(Patcher.addPatch(m, hook));
+        return createUnpatch(Patcher.addFusedPatch(m, hook, logger.getModule()));
     }
 
     /**
@@ -93,14 +103,52 @@ public class PatcherAPI {
      * @return Method that will remove the patch when invoked
      */
     public Runnable patch(@NonNull Member m, @NonNull Action1<XC_MethodHook.MethodHookParam> callback) {
-        return createUnpatch(Patcher.addPatch(m, new Hook(callback)));
+        return patch(m, new Hook(callback));
+    }
+
+    /**
+     * Installs several patches at once. All members are resolved before anything is patched,
+     * so either all or none of the patches are installed.
+     *
+     * @param specs The patches to install.
+     * @return Method that will remove all of the patches when invoked
+     * @throws NoSuchMethodException A patched method wasn't found.
+     */
+    public Runnable install(@NonNull List<PatchSpec> specs) throws NoSuchMethodException {
+        var patches = Patcher.install(specs, logger.getModule());
+        var added = new HashSet<Unpatch>(patches.size() * 2);
+        for (var patch : patches) {
+            var unpatch = new Unpatch(patch);
+            added.add(unpatch);
+            active.add(unpatch);
+            unpatches.add(unpatch);
+        }
+        return () -> {
+            // Skip patches that were removed already, e.g. via unpatchAll
+            var remaining = new ArrayList<Patch>(added.size());
+            for (var unpatch : added) if (active.remove(unpatch)) remaining.add(unpatch.patch);
+            unpatches.removeAll(added);
+            Patcher.uninstall(remaining);
+        };
     }
 
     /**
      * Removes all patches.
      */
     public void unpatchAll() {
-        Object[] runnables = unpatches.toArray();
-        for (Object unpatch : runnables) ((Runnable) unpatch).run();
+        var patches = new ArrayList<Patch>();
+        var removed = new HashSet<Runnable>();
+        var others = new ArrayList<Runnable>();
+        for (Runnable unpatch : unpatches) {
+            if (unpatch instanceof Unpatch) {
+                if (active.remove(unpatch)) patches.add(((Unpatch) unpatch).patch);
+                removed.add(unpatch);
+            } else others.add(unpatch);
+        }
+        // Removed in one pass instead of searching the list for each of them
+        unpatches.removeAll(removed);
+        Patcher.uninstall(patches);
+
+        for (var unpatch : others) unpatch.run();
     }
 }
@@ -6,21 +6,88 @@
 package com.aliucord.api;
 
 
-import com.aliucord.SettingsUtilsJSON;
+import com.aliucord.*;
+import com.aliucord.utils.RxUtils;
 
 import java.lang.reflect.Type;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import rx.Observable;
+import rx.subjects.BehaviorSubject;
 
 @SuppressWarnings("unused")
 public class SettingsAPI {
-    private SettingsUtilsJSON settings;
+    private static final Logger logger = new Logger("SettingsAPI");
+
+    private SettingsBackend settings;
     private final String pluginName;
+    private final Function<String, SettingsBackend> backendFactory;
+    private final List<SettingsChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    /** An observed setting and the value it last emitted, as stored */
+    private static final class Observed {
+        final BehaviorSubject<Object> subject;
+        private Object value;
+
+        Observed(Object value) {
+            this.value = value;
+            subject = BehaviorSubject.l0(value);
+        }
+
+        /**
+         * @param changed Whether the setting was written. Objects may have been mutated and then set again, in which case
+         *                they are the same instance as the last value, so they are emitted on every write
+         */
+        synchronized void update(Object newValue, boolean changed) {
+            if (Objects.equals(value, newValue) && (!changed || isValueType(newValue))) return;
+            value = newValue;
+            subject.onNext(newValue);
+        }
+
+        private static boolean isValueType(Object value) {
+            return value == null || value instanceof String || value instanceof Boolean || value instanceof Number;
+        }
+    }
+
+    /**
+     * Observed settings by key. One subject per key is shared by all observers and kept as long as this SettingsAPI,
+     * rx's unsubscribe hooks aren't accessible in Discord's obfuscated build to release it earlier
+     */
+    private final Map<String, Observed> observed = new ConcurrentHashMap<>();
+    /** Forwards changes of the current backend, so listeners keep working after {@link #resetSettings()} */
+    private final SettingsChangeListener dispatcher = keys -> {
+        for (var key : keys) {
+            var o = observed.get(key);
+            if (o != null) o.update(settings.getUnknown(key), true);
+        }
+        for (var listener : listeners) try {
+            listener.onChanged(keys);
+        } catch (Throwable e) {
+            logger.error("Settings change listener threw", e);
+        }
+    };
 
     /**
      * Creates a SettingsAPI for the specified plugin
      */
     public SettingsAPI(String plugin) {
-        settings = new SettingsUtilsJSON(plugin);
+        this(plugin, SettingsUtilsJSON::new);
+    }
+
+    /**
+     * Creates a SettingsAPI for the specified plugin with a custom storage backend,
+     * for example <code>new SettingsAPI(name, SettingsUtilsBinary::new)</code>
+     *
+     * @param plugin         Name of the plugin, used as name of the settings file
+     * @param backendFactory Creates the backend for the specified name
+     */
+    public SettingsAPI(String plugin, Function<String, SettingsBackend> backendFactory) {
+        this.backendFactory = backendFactory;
+        settings = backendFactory.apply(plugin);
+        settings.addChangeListener(dispatcher);
         pluginName = plugin;
     }
 
@@ -31,10 +98,62 @@ public class SettingsAPI {
      */
     public boolean resetSettings() {
         var isSuccessful = settings.resetFile();
-        settings = new SettingsUtilsJSON(pluginName);
+        settings.removeChangeListener(dispatcher);
+        settings = backendFactory.apply(pluginName);
+        settings.addChangeListener(dispatcher);
         return isSuccessful;
     }
 
+    /**
+     * Starts a transaction changing several settings at once, e.g.
+     * <code>settings.edit().setBool("enabled", true).setInt("size", 2).apply()</code>.
+     * Kotlin plugins can use <code>settings.edit { setBool("enabled", true) }</code> instead.
+     *
+     * @return Editor collecting the changes until {@link SettingsEditor#apply()} or {@link SettingsEditor#commit()} is called
+     */
+    public SettingsEditor edit() {
+        return new SettingsEditor(settings);
+    }
+
+    /**
+     * Adds a listener that is notified with the changed keys after settings are changed,
+     * once per change or {@link #edit() transaction}
+     *
+     * @param listener The listener
+     */
+    public void addChangeListener(SettingsChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added via {@link #addChangeListener(SettingsChangeListener)}
+     *
+     * @param listener The listener
+     */
+    public void removeChangeListener(SettingsChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Observes a setting. The returned {@link Observable} emits the current value on subscription and then the new value
+     * whenever the setting changes. Strings, booleans and numbers aren't emitted when set to an equal value again,
+     * objects are emitted on every write as they may have been changed in place.
+     * Values are read from memory, so patches can use this to keep a setting up to date instead of reading it on every call.
+     * All observers of a key share the same subject, each one only converts its values to the type of its default value.
+     *
+     * @param key      Key of the setting
+     * @param defValue Default value of the setting, emitted while it doesn't exist. May be null
+     * @return {@link Observable} of the value, never completes
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Observable<T> observe(String key, T defValue) {
+        var o = observed.computeIfAbsent(key, k -> new Observed(settings.getUnknown(k)));
+        // The setting may have changed after reading it but before it was registered
+        o.update(settings.getUnknown(key), false);
+        if (defValue == null) return (Observable<T>) (Observable<?>) o.subject;
+        return RxUtils.map(o.subject, value -> (T) getUnknown(key, defValue));
+    }
+
     /**
      * Removes Item from settings
      *
@@ -171,16 +290,24 @@ public class SettingsAPI {
 
     /**
      * Gets an {@link Object} stored in the settings.
+     * <p>
+     * <b>The returned object is shared:</b> it is cached and the same instance is returned by later calls, including
+     * calls from other threads. Changing it in place is visible to every other reader right away, even if it is never
+     * saved. Copy it before changing it, or pass it to {@link #setObject(String, Object)} right after.
      * @param key Key of the setting.
      * @param defValue Default value of the setting.
      * @return Stored value, or default value if it doesn't exist.
      */
     public <T> T getObject(String key, T defValue) {
-        return settings.getObject(key, defValue);
+        return settings.getObject(key, defValue, defValue.getClass());
     }
 
     /**
      * Gets an {@link Object} stored in the settings.
+     * <p>
+     * <b>The returned object is shared:</b> it is cached and the same instance is returned by later calls, including
+     * calls from other threads. Changing it in place is visible to every other reader right away, even if it is never
+     * saved. Copy it before changing it, or pass it to {@link #setObject(String, Object)} right after.
      * @param key Key of the setting.
      * @param defValue Default value of the setting.
      * @param type {@link Object} representing the data type.
@@ -202,8 +329,10 @@ public class SettingsAPI {
     /**
      * Get a value of an unknown type
      * @param key Key of the item
+     * @param defValue Default value, its type decides how the value is read. If null, the value is returned as the type it is stored as
      */
     public Object getUnknown(String key, Object defValue) {
+        if (defValue == null) return settings.getUnknown(key);
         if (defValue instanceof String) return getString(key, (String) defValue);
         if (defValue instanceof Boolean) return getBool(key, (Boolean) defValue);
         if (defValue instanceof Long) return getLong(key, (Long) defValue);
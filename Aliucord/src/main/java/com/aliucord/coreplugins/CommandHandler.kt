@@ -33,7 +33,7 @@ internal class CommandHandler : CorePlugin(Manifest("CommandHandler")) {
   override val isRequired = true
 
   override fun load(context: Context) {
-    Patcher.addPatch(BuiltInCommands::class.java, "getBuiltInCommands", emptyArray(), Hook {
+    Patcher.addFusedPatch(BuiltInCommands::class.java, "getBuiltInCommands", emptyArray(), Hook {
       val list = it.result.run { if (this == null) return@Hook else this as MutableList<ApplicationCommand?> }
       val addList = CommandsAPI.commands.values
       if (!list.containsAll(addList))
@@ -44,7 +44,7 @@ internal class CommandHandler : CorePlugin(Manifest("CommandHandler")) {
     })
 
     val storeApplicationCommands = StoreApplicationCommands::class.java
-    Patcher.addPatch(storeApplicationCommands, "getApplications", emptyArray(), Hook {
+    Patcher.addFusedPatch(storeApplicationCommands, "getApplications", emptyArray(), Hook {
       val list = it.result.run { if (this == null) return@Hook else this as MutableList<Application?> }
       val acApp = CommandsAPI.getAliucordApplication()
       if (!list.contains(acApp))
@@ -53,7 +53,7 @@ internal class CommandHandler : CorePlugin(Manifest("CommandHandler")) {
         }
     })
 
-    Patcher.addPatch(storeApplicationCommands, "getApplicationMap", emptyArray(), Hook {
+    Patcher.addFusedPatch(storeApplicationCommands, "getApplicationMap", emptyArray(), Hook {
       val map = it.result.run { if (this == null) return@Hook else this as MutableMap<Long?, Application?> }
       if (!map.containsKey(CommandsAPI.ALIUCORD_APP_ID))
         with(if (map is LinkedHashMap<Long?, Application?>) map else LinkedHashMap(map).apply { it.result = this }) {
@@ -61,7 +61,7 @@ internal class CommandHandler : CorePlugin(Manifest("CommandHandler")) {
         }
     })
 
-    Patcher.addPatch(storeApplicationCommands, "handleGuildApplicationsUpdate", arrayOf(List::class.java), PreHook {
+    Patcher.addFusedPatch(storeApplicationCommands, "handleGuildApplicationsUpdate", arrayOf(List::class.java), PreHook {
       val list = it.result.run { if (this == null) return@PreHook else this as MutableList<Application?> }
       if (!list.contains(CommandsAPI.getAliucordApplication()))
         with(if (list is ArrayList<Application?>) list else ArrayList(list).apply { it.args[0] = this }) {
@@ -69,13 +69,13 @@ internal class CommandHandler : CorePlugin(Manifest("CommandHandler")) {
         }
     })
 
-    Patcher.addPatch(StoreLocalMessagesHolder::class.java, "messageCacheTryPersist", emptyArray(), InsteadHook.DO_NOTHING)
+    Patcher.addFusedPatch(StoreLocalMessagesHolder::class.java, "messageCacheTryPersist", emptyArray(), InsteadHook.DO_NOTHING)
 
     // needed to reimplement this to:
     // 1. don't send command result if not needed
     // 2. fully support arguments in built-in subcommands
     // 3. clear input after executing command
-    Patcher.addPatch(
+    Patcher.addFusedPatch(
       `WidgetChatInput$configureSendListeners$2`::class.java.getDeclaredMethod("invoke", List::class.java, ApplicationCommandData::class.java, Function1::class.java),
       PreHook { (it, _: Any, data: ApplicationCommandData?) ->
         if (data == null) return@PreHook
@@ -93,7 +93,7 @@ internal class CommandHandler : CorePlugin(Manifest("CommandHandler")) {
     // Show Plugin name instead of 'Aliucord' in the command list
     val autocompleteItemViewHolder = AutocompleteItemViewHolder::class.java
     val bindingField = autocompleteItemViewHolder.getDeclaredField("binding").apply { isAccessible = true }
-    Patcher.addPatch(
+    Patcher.addFusedPatch(
       autocompleteItemViewHolder.getDeclaredMethod("bindCommand", ApplicationCommandAutocompletable::class.java),
       Hook { (it, autocompletable: ApplicationCommandAutocompletable) ->
         val cmd = autocompletable.command.run { if (this is ApplicationSubCommand) rootCommand else this }
@@ -104,7 +104,7 @@ internal class CommandHandler : CorePlugin(Manifest("CommandHandler")) {
       }
     )
 
-    Patcher.addPatch(Message::class.java, "isLocalApplicationCommand", arrayOf(), PreHook {
+    Patcher.addFusedPatch(Message::class.java, "isLocalApplicationCommand", arrayOf(), PreHook {
       with(it.thisObject as Message) {
         val type = type ?: return@PreHook
         if (isLoading && type != MessageTypes.LOCAL_APPLICATION_COMMAND && type != MessageTypes.LOCAL_APPLICATION_COMMAND_SEND_FAILED)
@@ -113,7 +113,7 @@ internal class CommandHandler : CorePlugin(Manifest("CommandHandler")) {
     })
 
     // don't mark Aliucord command messages as
-    Patcher.addPatch(
+    Patcher.addFusedPatch(
       WidgetChatListAdapterItemMessage::class.java.getDeclaredMethod("processMessageText", SimpleDraweeSpanTextView::class.java, MessageEntry::class.java),
       Hook { (_, textView: TextView, messageEntry: MessageEntry) ->
         val message = messageEntry.message ?: return@Hook
@@ -123,7 +123,7 @@ internal class CommandHandler : CorePlugin(Manifest("CommandHandler")) {
       }
     )
 
-    Patcher.addPatch(WidgetApplicationCommandBottomSheetViewModel::class.java, "requestInteractionData", arrayOf(), PreHook {
+    Patcher.addFusedPatch(WidgetApplicationCommandBottomSheetViewModel::class.java, "requestInteractionData", arrayOf(), PreHook {
       with(it.thisObject as WidgetApplicationCommandBottomSheetViewModel) {
         if (applicationId != -1L) return@PreHook
         val state = CommandsAPI.interactionsStore[interactionId]
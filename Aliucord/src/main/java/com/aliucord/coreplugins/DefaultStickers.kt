@@ -35,7 +35,7 @@ internal class DefaultStickers : CorePlugin(Manifest("DefaultStickers")) {
     override fun start(context: Context) {
         val stickerPickerViewModel = StickerPickerViewModel::class.java
         val localeField = stickerPickerViewModel.getDeclaredField("locale").apply { isAccessible = true }
-        Patcher.addPatch(stickerPickerViewModel.getDeclaredMethod("createCategoryItems", StickerPickerViewModel.StoreState.Loaded::class.java, List::class.java, List::class.java), object : XC_MethodHook() {
+        Patcher.addFusedPatch(stickerPickerViewModel.getDeclaredMethod("createCategoryItems", StickerPickerViewModel.StoreState.Loaded::class.java, List::class.java, List::class.java), object : XC_MethodHook() {
             override fun beforeHookedMethod(param: MethodHookParam) {
                 val data = param.args[0] as StickerPickerViewModel.StoreState.Loaded
                 val me = data.meUser
@@ -67,7 +67,7 @@ internal class DefaultStickers : CorePlugin(Manifest("DefaultStickers")) {
             }
         })
 
-        Patcher.addPatch(StickerUtils::class.java.getDeclaredMethod("getStickerSendability", Sticker::class.java, User::class.java, Channel::class.java, Long::class.javaObjectType), PreHook { (it, sticker: Sticker) ->
+        Patcher.addFusedPatch(StickerUtils::class.java.getDeclaredMethod("getStickerSendability", Sticker::class.java, User::class.java, Channel::class.java, Long::class.javaObjectType), PreHook { (it, sticker: Sticker) ->
             if (sticker.k() == StickerType.STANDARD) it.result = StickerSendability.SENDABLE
         })
 
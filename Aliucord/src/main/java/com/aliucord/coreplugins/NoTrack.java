@@ -18,8 +18,6 @@ import com.google.firebase.crashlytics.FirebaseCrashlytics;
 
 import java.util.*;
 
-import de.robv.android.xposed.XposedBridge;
-
 public final class NoTrack extends CorePlugin {
     public NoTrack() {
         super(new Manifest("NoTrack"));
@@ -55,12 +53,13 @@ public final class NoTrack extends CorePlugin {
 
         for (Map.Entry<String, String[]> entry : map.entrySet()) {
             var clazz = cl.loadClass(entry.getKey());
+            var methods = clazz.getDeclaredMethods();
             for (String fn : entry.getValue()) {
-                XposedBridge.hookAllMethods(clazz, fn, InsteadHook.DO_NOTHING);
+                for (var method : methods) if (method.getName().equals(fn)) Patcher.addFusedPatch(method, InsteadHook.DO_NOTHING);
             }
         }
 
-        Patcher.addPatch(SurveyUtils.class.getDeclaredMethod("isInstallOldEnough"), InsteadHook.returnConstant(false));
+        Patcher.addFusedPatch(SurveyUtils.class.getDeclaredMethod("isInstallOldEnough"), InsteadHook.returnConstant(false));
     }
 
     @Override
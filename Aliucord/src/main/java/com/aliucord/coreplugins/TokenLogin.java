@@ -80,7 +80,7 @@ public final class TokenLogin extends CorePlugin {
     @Override
     @SuppressLint("SetTextI18n")
     public void start(Context appContext) throws Throwable {
-        Patcher.addPatch(WidgetAuthLanding.class.getDeclaredMethod("onViewBound", View.class), new Hook(param -> {
+        Patcher.addFusedPatch(WidgetAuthLanding.class.getDeclaredMethod("onViewBound", View.class), new Hook(param -> {
             Context context = ((WidgetAuthLanding) param.thisObject).requireContext();
             RelativeLayout view = (RelativeLayout) param.args[0];
             LinearLayout v = (LinearLayout) view.getChildAt(1);
@@ -97,7 +97,7 @@ public final class TokenLogin extends CorePlugin {
             v.addView(btn);
         }));
 
-        Patcher.addPatch(AppActivity.class, "g", new Class<?>[]{ List.class }, new Hook(param -> {
+        Patcher.addFusedPatch(AppActivity.class, "g", new Class<?>[]{ List.class }, new Hook(param -> {
             if (!((boolean) param.getResult()) && ((AppActivity) param.thisObject).d().equals(Page.class)) param.setResult(true);
         }));
     }
@@ -37,6 +37,7 @@ internal class BadgesAPI(private val settings: SettingsAPI) {
         return try {
             Http.Request("https://aliucord.com/files/badges/data.json")
                 .setHeader("User-Agent", "Aliucord/${BuildConfig.VERSION}")
+                .setUseCache(true)
                 .execute()
                 .json(BadgesInfo::class.java)
         } catch (e: Exception) {
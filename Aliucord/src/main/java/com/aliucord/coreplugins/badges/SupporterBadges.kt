@@ -11,6 +11,7 @@ import android.view.View
 import android.view.ViewGroup
 import android.widget.ImageView
 import com.aliucord.*
+import com.aliucord.api.SettingsAPI
 import com.aliucord.entities.CorePlugin
 import com.aliucord.patcher.*
 import com.aliucord.utils.DimenUtils.dp
@@ -40,7 +41,12 @@ internal class SupporterBadges : CorePlugin(MANIFEST) {
     @Suppress("UNCHECKED_CAST")
     override fun start(context: Context) {
         Utils.threadPool.execute {
-            badges = BadgesAPI(settings).getBadges()
+            // Badges used to be cached in the plugin settings, which made every read parse and write serialise them as json
+            if (settings.exists("cachedBadges")) settings.edit {
+                remove("cachedBadges")
+                remove("cacheExpiration")
+            }
+            badges = BadgesAPI(SettingsAPI("SupporterBadgesCache") { SettingsUtilsBinary(it) }).getBadges()
         }
 
         // Add badges to the RecyclerView data for badges in the user profile header
@@ -18,21 +18,20 @@ internal fun ImageView.setCacheableImage(url: String) {
     if (cachedImage != null) {
         setImageBitmap(cachedImage)
     } else {
-        Utils.threadPool.execute {
-            try {
-                val image = Http.Request(url)
-                    .setHeader("User-Agent", "Aliucord/${BuildConfig.VERSION}")
-                    .execute()
-                    .stream()
-                    .let(BitmapFactory::decodeStream)
+        val request = try {
+            Http.Request(url).setHeader("User-Agent", "Aliucord/${BuildConfig.VERSION}")
+        } catch (e: Exception) {
+            Logger("ImageCache").warn("Failed to retrieve image $url", e)
+            return
+        }
 
-                Utils.mainThread.post {
+        request.executeAsync { res -> res.stream().use(BitmapFactory::decodeStream) }
+            .whenComplete { image, e ->
+                if (e != null) Logger("ImageCache").warn("Failed to retrieve image $url", e)
+                else Utils.mainThread.post {
                     imageCache[url] = image
                     setImageBitmap(image)
                 }
-            } catch (e: Exception) {
-                Logger("ImageCache").warn("Failed to retrieve image $url", e)
             }
-        }
     }
 }
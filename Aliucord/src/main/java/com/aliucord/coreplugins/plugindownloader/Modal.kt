@@ -15,6 +15,7 @@ import com.aliucord.Utils
 import com.lytefast.flexinput.R
 import java.io.PrintWriter
 import java.io.StringWriter
+import java.util.concurrent.CancellationException
 
 import com.aliucord.Http
 import com.aliucord.views.Button
@@ -49,14 +50,17 @@ internal class Modal(private val author: String, private val repo: String) : Set
                 }
             }
             plugins == null -> {
-                Utils.threadPool.execute {
-                    try {
-                        plugins =
-                            Http.simpleJsonGet("https://raw.githubusercontent.com/$author/$repo/builds/updater.json", resType)
-                    } catch (th: Throwable) {
+                cancelOnDestroy(
+                    Http.Request("https://raw.githubusercontent.com/$author/$repo/builds/updater.json")
+                        .setUseCache(true)
+                        .executeAsync { it.json<Map<String, PluginInfo>>(resType) }
+                ).whenComplete { res, th ->
+                    if (th is CancellationException) return@whenComplete
+                    Utils.mainThread.post {
+                        plugins = res
                         throwable = th
+                        onViewBound(view)
                     }
-                    Utils.mainThread.post { onViewBound(view) }
                 }
             }
             else -> {
@@ -67,7 +67,7 @@ fun patchNextCallAdapter() {
     val newUserProfile = TypeToken.getParameterized(Observable::class.java, RNUserProfile::class.java).type
 
     // nextCallAdapter https://github.com/square/retrofit/blob/c0fd64b5d3ddcc6665a16a4814c5b1596762305d/retrofit/src/main/java/retrofit2/Retrofit.java#L252
-    Patcher.addPatch(i0.y::class.java.getDeclaredMethod("a", Type::class.java, Array<Annotation>::class.java), PreHook {
+    Patcher.addFusedPatch(i0.y::class.java.getDeclaredMethod("a", Type::class.java, Array<Annotation>::class.java), PreHook {
         when (it.args[0]) {
             oldUser -> it.args[0] = newUser
             oldUserProfile -> it.args[0] = newUserProfile
@@ -79,11 +79,11 @@ val globalNames = mutableMapOf<Long, String>()
 fun patchUser() {
     val original = User::class.java
     val new = RNUser::class.java
-    Patcher.addPatch(InboundGatewayGsonParser::class.java.getDeclaredMethod("fromJson", JsonReader::class.java, Class::class.java), PreHook {
+    Patcher.addFusedPatch(InboundGatewayGsonParser::class.java.getDeclaredMethod("fromJson", JsonReader::class.java, Class::class.java), PreHook {
         if (it.args[1] == original) it.args[1] = new
     })
 
-    Patcher.addPatch(UserUtils::class.java.getDeclaredMethod("padDiscriminator", Int::class.java), PreHook {
+    Patcher.addFusedPatch(UserUtils::class.java.getDeclaredMethod("padDiscriminator", Int::class.java), PreHook {
         if (it.args[0] == 0) it.result = ""
     })
 
@@ -91,27 +91,27 @@ fun patchUser() {
         val user = it.args[0] as User
         if (user is RNUser && user.globalName != null) globalNames[user.id] = user.globalName
     }
-    Patcher.addPatch(CoreUser::class.java.getDeclaredConstructor(User::class.java), hook)
-    Patcher.addPatch(MeUser::class.java.getDeclaredConstructor(User::class.java), hook)
+    Patcher.addFusedPatch(CoreUser::class.java.getDeclaredConstructor(User::class.java), hook)
+    Patcher.addFusedPatch(MeUser::class.java.getDeclaredConstructor(User::class.java), hook)
 
-    Patcher.addPatch(GuildMember.Companion::class.java.getDeclaredMethod("getNickOrUsername", ModelUser::class.java, GuildMember::class.java, Channel::class.java, List::class.java), Hook {
+    Patcher.addFusedPatch(GuildMember.Companion::class.java.getDeclaredMethod("getNickOrUsername", ModelUser::class.java, GuildMember::class.java, Channel::class.java, List::class.java), Hook {
         val user = it.args[0] as ModelUser
         if (it.result == user.username && globalNames.containsKey(user.id)) it.result = globalNames[user.id]
     })
 
-    Patcher.addPatch(UserNameFormatterKt::class.java.getDeclaredMethod("getSpannableForUserNameWithDiscrim", ModelUser::class.java, String::class.java, Context::class.java, Int::class.java, Int::class.java, Int::class.java, Int::class.java, Int::class.java, Int::class.java), PreHook {
+    Patcher.addFusedPatch(UserNameFormatterKt::class.java.getDeclaredMethod("getSpannableForUserNameWithDiscrim", ModelUser::class.java, String::class.java, Context::class.java, Int::class.java, Int::class.java, Int::class.java, Int::class.java, Int::class.java, Int::class.java), PreHook {
         if (it.args[1] == null) {
             val user = it.args[0] as ModelUser
             if (globalNames.containsKey(user.id)) it.args[1] = globalNames[user.id]
         }
     })
 
-    Patcher.addPatch(UserProfileHeaderView::class.java.getDeclaredMethod("getSecondaryNameTextForUser", ModelUser::class.java, GuildMember::class.java), PreHook {
+    Patcher.addFusedPatch(UserProfileHeaderView::class.java.getDeclaredMethod("getSecondaryNameTextForUser", ModelUser::class.java, GuildMember::class.java), PreHook {
         val user = it.args[0] as ModelUser
         if (globalNames.containsKey(user.id)) it.result = UserUtils.INSTANCE.getUserNameWithDiscriminator(user, null, null)
     })
     val headerViewModel = UserProfileHeaderViewModel.ViewState.Loaded::class.java
-    Patcher.addPatch(UserProfileHeaderView::class.java.getDeclaredMethod("configureSecondaryName", headerViewModel), object : XC_MethodHook() {
+    Patcher.addFusedPatch(UserProfileHeaderView::class.java.getDeclaredMethod("configureSecondaryName", headerViewModel), object : XC_MethodHook() {
         val showAkasField = headerViewModel.getDeclaredField("showAkas").apply { isAccessible = true }
         var showAkas: Any? = null
 
@@ -125,14 +125,14 @@ fun patchUser() {
         }
     })
 
-    Patcher.addPatch(`ChannelUtils$getDisplayName$1`::class.java.getDeclaredMethod("invoke", Any::class.java), PreHook {
+    Patcher.addFusedPatch(`ChannelUtils$getDisplayName$1`::class.java.getDeclaredMethod("invoke", Any::class.java), PreHook {
         val user = it.args[0]
         if (user is RNUser && user.globalName != null) it.result = user.globalName
     })
 }
 
 fun patchDefaultAvatars() {
-    Patcher.addPatch(
+    Patcher.addFusedPatch(
         IconUtils::class.java.getDeclaredMethod(
             "getForUser",
             Long::class.javaObjectType,
@@ -166,17 +166,17 @@ fun patchDefaultAvatars() {
 fun patchUsername() {
     if (StoreStream.getUsers().me.discriminator != 0) return
 
-    Patcher.addPatch(
+    Patcher.addFusedPatch(
         `AuthUtils$createDiscriminatorInputValidator$1`::class.java.getDeclaredMethod("getErrorMessage", TextInputLayout::class.java),
         InsteadHook.DO_NOTHING
     )
-    Patcher.addPatch(WidgetSettingsAccountUsernameEdit::class.java.getDeclaredMethod("configureUI", MeUser::class.java), Hook {
+    Patcher.addFusedPatch(WidgetSettingsAccountUsernameEdit::class.java.getDeclaredMethod("configureUI", MeUser::class.java), Hook {
         val binding = WidgetSettingsAccountUsernameEdit.`access$getBinding$p`(it.thisObject as WidgetSettingsAccountUsernameEdit)
 
         (binding.b.parent as View).visibility = View.GONE
     })
 
-    Patcher.addPatch(WidgetUserPasswordVerify::class.java.getDeclaredMethod("updateAccountInfo", String::class.java), PreHook {
+    Patcher.addFusedPatch(WidgetUserPasswordVerify::class.java.getDeclaredMethod("updateAccountInfo", String::class.java), PreHook {
         (it.thisObject as AppFragment).mostRecentIntent.removeExtra("INTENT_EXTRA_DISCRIMINATOR")
     })
 }
@@ -184,7 +184,7 @@ fun patchUsername() {
 @Suppress("UNCHECKED_CAST")
 fun patchUserProfile() {
     val interceptor = RNHeadersInterceptor()
-    Patcher.addPatch(f0.e0.h.g::class.java.declaredConstructors[0], PreHook {
+    Patcher.addFusedPatch(f0.e0.h.g::class.java.declaredConstructors[0], PreHook {
         if (it.args[2] != 0) return@PreHook
         val req = it.args[4] as Request
         if (req.b.i.last() == "profile") {
@@ -194,7 +194,7 @@ fun patchUserProfile() {
     })
 
     /** discord doesn't check in [com.discord.widgets.user.WidgetUserMutualGuilds.Model] if mutualGuilds list is null */
-    Patcher.addPatch(UserProfile::class.java.getDeclaredMethod("d"), Hook {
+    Patcher.addFusedPatch(UserProfile::class.java.getDeclaredMethod("d"), Hook {
         if (it.result == null) it.result = Collections.EMPTY_LIST
     })
 }
@@ -203,13 +203,13 @@ fun patchStickers() {
     val hook = Hook {
         if (it.result == StickerFormatType.UNKNOWN) it.result = StickerFormatType.PNG
     }
-    Patcher.addPatch(Sticker::class.java.getDeclaredMethod("a"), hook)
-    Patcher.addPatch(StickerPartial::class.java.getDeclaredMethod("a"), hook)
+    Patcher.addFusedPatch(Sticker::class.java.getDeclaredMethod("a"), hook)
+    Patcher.addFusedPatch(StickerPartial::class.java.getDeclaredMethod("a"), hook)
 }
 
 fun patchVoice() {
     // don't send heartbeat ("op": 3) on connect
-    Patcher.addPatch(b.a.q.n0.a::class.java.getDeclaredMethod("k"), InsteadHook.DO_NOTHING)
+    Patcher.addFusedPatch(b.a.q.n0.a::class.java.getDeclaredMethod("k"), InsteadHook.DO_NOTHING)
 }
 
 fun fixPersisters() {
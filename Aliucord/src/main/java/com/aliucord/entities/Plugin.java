@@ -65,6 +65,33 @@ public abstract class Plugin {
             public String toString() { return name; }
         }
 
+        /**
+         * Triggers that activate a plugin on first use. A plugin declaring any of these is not started on launch,
+         * but stays dormant until one of them fires. See {@link com.aliucord.PluginManager#getDormantPlugins()}
+         */
+        public static class ActivationTriggers {
+            /**
+             * Names of commands registered by the plugin. A placeholder is registered for each of them,
+             * running it activates the plugin
+             */
+            public String[] commands = new String[]{};
+            /**
+             * Gateway events (e.g. MESSAGE_CREATE) that activate the plugin.
+             * The event that activated the plugin is not delivered to its listeners
+             */
+            public String[] events = new String[]{};
+            /**
+             * Whether opening the settings of the plugin activates it.
+             * The plugin has to set its {@link SettingsTab} before being started for this to work
+             */
+            public boolean settings;
+
+            /** Whether no trigger is set, in which case the plugin is started right away as nothing could activate it */
+            public boolean isEmpty() {
+                return (commands == null || commands.length == 0) && (events == null || events.length == 0) && !settings;
+            }
+        }
+
         public String name;
         public String pluginClassName;
         /** The authors of this plugin */
@@ -80,6 +107,8 @@ public abstract class Plugin {
         public String changelog;
         /** Image or video link that will be displayed at the top of the changelog */
         public String changelogMedia;
+        /** Triggers that activate this plugin on first use instead of starting it on launch. Optional */
+        public ActivationTriggers activationTriggers;
 
         public Manifest(String name) {
             this.name = name;
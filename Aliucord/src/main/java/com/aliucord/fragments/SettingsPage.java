@@ -28,6 +28,9 @@ import com.discord.app.AppFragment;
 import com.google.android.material.appbar.AppBarLayout;
 import com.lytefast.flexinput.R;
 
+import java.util.*;
+import java.util.concurrent.Future;
+
 
 /** Settings Page Fragment */
 @SuppressWarnings("unused")
@@ -36,6 +39,7 @@ public class SettingsPage extends AppFragment {
     private CoordinatorLayout view;
     private LinearLayout layout;
     private Toolbar toolbar;
+    private final List<Future<?>> pendingTasks = new ArrayList<>();
 
     @SuppressLint("ResourceType")
     public SettingsPage() {
@@ -229,6 +233,30 @@ public class SettingsPage extends AppFragment {
         onViewBound(view);
     }
 
+    /**
+     * Cancels the specified task once the view of this page is destroyed, for example an asynchronous request
+     * started with {@link com.aliucord.Http.Request#executeAsync(com.aliucord.Http.ResponseHandler)}
+     *
+     * @param task The task
+     * @return The task, for chaining
+     */
+    public final <F extends Future<?>> F cancelOnDestroy(F task) {
+        synchronized (pendingTasks) {
+            pendingTasks.removeIf(Future::isDone);
+            pendingTasks.add(task);
+        }
+        return task;
+    }
+
+    @Override
+    public void onDestroyView() {
+        synchronized (pendingTasks) {
+            for (var task : pendingTasks) task.cancel(true);
+            pendingTasks.clear();
+        }
+        super.onDestroyView();
+    }
+
     /** Closes this SettingsPage by simulating a back press */
     public final void close() {
         requireActivity().onBackPressed();
@@ -0,0 +1,26 @@
+/*
+ * This file is part of Aliucord, an Android Discord client mod.
+ * Copyright (c) 2024 Juby210 & Vendicated
+ * Licensed under the Open Software License version 3.0
+ */
+
+package com.aliucord.patcher
+
+import de.robv.android.xposed.XC_MethodHook
+import de.robv.android.xposed.callbacks.XCallback
+
+/**
+ * A hook [Patcher] can run itself. When added via [Patcher.addFusedPatch] or a [PatcherAPI][com.aliucord.api.PatcherAPI],
+ * all fusable hooks of a member share a single Xposed hook instead of each adding their own layer.
+ *
+ * Override [beforeHookedMethod] and [afterHookedMethod] like with any [XC_MethodHook].
+ *
+ * @param priority Priority of the hook, higher runs earlier, see [XCallback.PRIORITY_DEFAULT]
+ */
+abstract class FusableHook @JvmOverloads constructor(priority: Int = XCallback.PRIORITY_DEFAULT) : XC_MethodHook(priority) {
+    /** What this hook does with the patched member, used to find conflicting patches */
+    open val patchType get() = Patch.Type.CUSTOM
+
+    internal fun callBefore(param: MethodHookParam) = beforeHookedMethod(param)
+    internal fun callAfter(param: MethodHookParam) = afterHookedMethod(param)
+}
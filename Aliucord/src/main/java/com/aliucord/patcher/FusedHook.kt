@@ -0,0 +1,138 @@
+/*
+ * This file is part of Aliucord, an Android Discord client mod.
+ * Copyright (c) 2024 Juby210 & Vendicated
+ * Licensed under the Open Software License version 3.0
+ */
+
+package com.aliucord.patcher
+
+import de.robv.android.xposed.XC_MethodHook
+import de.robv.android.xposed.XposedBridge
+import java.lang.reflect.Field
+import java.lang.reflect.Member
+
+/**
+ * The single Xposed hook of a member, running all [FusableHook]s added to it from a flat array.
+ * Hooks run in the same order Xposed would run them: by priority, and in the order they were added for equal
+ * priorities. The array is replaced whenever hooks are added or removed, once per batch, so running calls are never
+ * blocked.
+ *
+ * The fused hook itself is registered with the default priority, so relative to unfused hooks of the same member,
+ * fusable hooks with another priority run as if they had the default priority.
+ */
+internal class FusedHook private constructor() : XC_MethodHook() {
+    internal class Entry(val hook: FusableHook, val priority: Int)
+
+    /**
+     * A running call, stored on its param. It keeps the entries the call started with and how many of them ran their
+     * before callback, so entries swapped in during the call don't affect it
+     */
+    private class Call(val entries: Array<Entry>, val end: Int)
+
+    @Volatile
+    private var entries = emptyArray<Entry>()
+    private lateinit var unhook: Unhook
+
+    // Mirrors XposedBridge.handleHookedMethod, including how exceptions of callbacks are handled
+    override fun beforeHookedMethod(param: MethodHookParam) {
+        val entries = entries
+        var end = entries.size
+        for (i in entries.indices) {
+            try {
+                entries[i].hook.callBefore(param)
+            } catch (th: Throwable) {
+                logError(param, th)
+                // Reset the result so the original method is called
+                param.result = null
+                returnEarly!!.setBoolean(param, false)
+                continue
+            }
+            if (returnsEarly(param)) {
+                // Like Xposed, the remaining hooks are skipped entirely
+                end = i + 1
+                break
+            }
+        }
+        param.setObjectExtra(CALL_KEY, Call(entries, end))
+    }
+
+    override fun afterHookedMethod(param: MethodHookParam) {
+        val call = param.getObjectExtra(CALL_KEY) as Call?
+        if (call == null) {
+            Patcher.logger.error("No fused call state for ${param.method.declaringClass.name}.${param.method.name}, skipping its after hooks", null)
+            return
+        }
+
+        val entries = call.entries
+        for (i in call.end - 1 downTo 0) {
+            val lastResult = param.result
+            val lastThrowable = param.throwable
+            try {
+                entries[i].hook.callAfter(param)
+            } catch (th: Throwable) {
+                logError(param, th)
+                // Restore the previous result
+                if (lastThrowable == null) param.result = lastResult else param.throwable = lastThrowable
+            }
+        }
+    }
+
+    companion object {
+        /** Fused hooks by member. Guarded by itself */
+        private val fusedHooks = HashMap<Member, FusedHook>()
+
+        private const val CALL_KEY = "aliucord.fusedCall"
+
+        /** Set by [MethodHookParam.setResult] and [MethodHookParam.setThrowable], not accessible otherwise */
+        private val returnEarly: Field? = try {
+            XC_MethodHook.MethodHookParam::class.java.getDeclaredField("returnEarly").apply { isAccessible = true }
+        } catch (e: Throwable) {
+            Patcher.logger.error("Failed to find MethodHookParam.returnEarly, hooks won't be fused", e)
+            null
+        }
+
+        private fun returnsEarly(param: XC_MethodHook.MethodHookParam) = returnEarly!!.getBoolean(param)
+
+        private fun logError(param: XC_MethodHook.MethodHookParam, th: Throwable) =
+            Patcher.logger.error("Exception in hook of ${param.method.declaringClass.name}.${param.method.name}", th)
+
+        /** Whether hooks can be fused with this Xposed implementation */
+        @JvmStatic
+        val isSupported
+            get() = returnEarly != null
+
+        /**
+         * Adds hooks to the fused hook of a member, hooking the member if it has none yet
+         *
+         * @return Entries of the hooks, to remove them again via [remove]
+         */
+        @JvmStatic
+        fun add(member: Member, hooks: List<FusableHook>): List<Entry> = synchronized(fusedHooks) {
+            val fused = fusedHooks[member] ?: FusedHook().also {
+                it.unhook = XposedBridge.hookMethod(member, it)
+                fusedHooks[member] = it
+            }
+
+            val added = hooks.map { Entry(it, it.priority) }
+            // Stable, so hooks with the same priority keep the order they were added in
+            fused.entries = (fused.entries + added).sortedByDescending(Entry::priority).toTypedArray()
+            added
+        }
+
+        /**
+         * Removes hooks from the fused hook of a member, unhooking the member once it has no hooks left
+         *
+         * @param entries Entries returned by [add]. Entries that were removed already are ignored
+         */
+        @JvmStatic
+        fun remove(member: Member, entries: Collection<Entry>) = synchronized(fusedHooks) {
+            val fused = fusedHooks[member] ?: return@synchronized
+            val removed = entries.toHashSet()
+            fused.entries = fused.entries.filter { it !in removed }.toTypedArray()
+            if (fused.entries.isEmpty()) {
+                fused.unhook.unhook()
+                fusedHooks.remove(member)
+            }
+        }
+    }
+}
@@ -6,19 +6,25 @@
 
 package com.aliucord.patcher
 
-import de.robv.android.xposed.XC_MethodHook
+import de.robv.android.xposed.XC_MethodHook.MethodHookParam
+import de.robv.android.xposed.callbacks.XCallback
 import rx.functions.Action1
 import java.lang.reflect.Member
 
 /**
  * Runs the specified [callback] **after** the hooked [Member]
  *
+ * @param priority Priority of the hook, higher runs earlier, see [XCallback.PRIORITY_DEFAULT]
  * @property callback The callback to run after this method
  */
-class Hook(val callback: Action1<MethodHookParam>) : XC_MethodHook() {
+class Hook(priority: Int, val callback: Action1<MethodHookParam>) : FusableHook(priority) {
+    constructor(callback: Action1<MethodHookParam>) : this(XCallback.PRIORITY_DEFAULT, callback)
+
+    override val patchType get() = Patch.Type.AFTER
+
     override fun afterHookedMethod(param: MethodHookParam) {
         try {
-            callback.call(param)
+            HookProfiler.profile(this, param, "after") { callback.call(param) }
         } catch (th: Throwable) {
             Patcher.logger.error(
                 "Exception while hooking ${param.method.declaringClass.name}.${param.method.name}",
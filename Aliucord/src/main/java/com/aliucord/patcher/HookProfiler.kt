@@ -0,0 +1,163 @@
+/*
+ * This file is part of Aliucord, an Android Discord client mod.
+ * Copyright (c) 2024 Juby210 & Vendicated
+ * Licensed under the Open Software License version 3.0
+ */
+
+package com.aliucord.patcher
+
+import com.aliucord.utils.GsonUtils.gsonPretty
+import com.aliucord.utils.GsonUtils.toJson
+import de.robv.android.xposed.XC_MethodHook
+import java.lang.reflect.Member
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Records how often each patch runs and how long its callback takes, attributed to the plugin that added the patch.
+ * Profiling is off by default and can be enabled and viewed in the Hook Profiler settings page.
+ *
+ * Callbacks of [Hook], [PreHook], [InsteadHook] and the [PatcherAPI][com.aliucord.api.PatcherAPI] extensions are
+ * profiled. Custom [XC_MethodHook] subclasses are not, as their callbacks are called by Xposed directly.
+ */
+object HookProfiler {
+    /** Name hooks are attributed to if they weren't installed via [Patcher] */
+    const val UNKNOWN = "Unknown"
+
+    /**
+     * Totals of a patch
+     *
+     * @param owner Name of the plugin that added the patch
+     * @param member The patched member, as `Class.method`
+     * @param type `before`, `after` or `instead`
+     * @param calls Amount of callback calls
+     * @param totalNanos Total time spent in the callback
+     * @param maxNanos Longest callback call
+     */
+    data class PatchStats(
+        val owner: String,
+        val member: String,
+        val type: String,
+        val calls: Long,
+        val totalNanos: Long,
+        val maxNanos: Long,
+    )
+
+    /**
+     * Totals of all patches of a plugin
+     *
+     * @param owner Name of the plugin
+     * @param calls Amount of callback calls
+     * @param totalNanos Total time spent in callbacks
+     */
+    data class OwnerStats(
+        val owner: String,
+        val calls: Long,
+        val totalNanos: Long,
+    )
+
+    /**
+     * Profile recorded since profiling was enabled or [reset]
+     *
+     * @param durationMillis Time the profile was recorded for
+     * @param owners Totals by plugin, sorted by total time
+     * @param patches Totals by patch, sorted by total time
+     */
+    data class Snapshot(
+        val durationMillis: Long,
+        val owners: List<OwnerStats>,
+        val patches: List<PatchStats>,
+    )
+
+    private class Counter(val type: String) {
+        var calls = 0L
+        var totalNanos = 0L
+        var maxNanos = 0L
+    }
+
+    // Both maps have weak keys so hooks of unloaded plugins, and with them their class loaders, can be collected
+    private val owners = Collections.synchronizedMap(WeakHashMap<XC_MethodHook, String>())
+    /** Counters by hook and patched member, as a hook may be used for several members. Guarded by itself */
+    private val counters = WeakHashMap<XC_MethodHook, ConcurrentHashMap<Member, Counter>>()
+    @Volatile
+    private var since = System.currentTimeMillis()
+
+    /** Whether patches are profiled */
+    @JvmStatic
+    @Volatile
+    var enabled = false
+        set(value) {
+            if (value && !field) reset()
+            field = value
+        }
+
+    /** Discards the recorded profile */
+    @JvmStatic
+    fun reset() {
+        synchronized(counters) { counters.clear() }
+        since = System.currentTimeMillis()
+    }
+
+    /**
+     * Sets the name a hook's calls are attributed to
+     *
+     * @param hook The hook
+     * @param owner Name of the plugin that added it
+     */
+    @JvmStatic
+    fun setOwner(hook: XC_MethodHook, owner: String) {
+        owners[hook] = owner
+    }
+
+    /**
+     * Runs a hook callback, recording its time if profiling is enabled
+     *
+     * @param hook The hook the callback belongs to
+     * @param param The param of the hooked call
+     * @param type `before`, `after` or `instead`
+     */
+    @PublishedApi
+    internal inline fun <T> profile(hook: XC_MethodHook, param: XC_MethodHook.MethodHookParam, type: String, block: () -> T): T {
+        if (!enabled) return block()
+        val start = System.nanoTime()
+        try {
+            return block()
+        } finally {
+            record(hook, param.method, type, System.nanoTime() - start)
+        }
+    }
+
+    @PublishedApi
+    internal fun record(hook: XC_MethodHook, member: Member, type: String, nanos: Long) {
+        val byMember = synchronized(counters) { counters.getOrPut(hook) { ConcurrentHashMap() } }
+        val counter = byMember.getOrPut(member) { Counter(type) }
+        synchronized(counter) {
+            counter.calls++
+            counter.totalNanos += nanos
+            if (nanos > counter.maxNanos) counter.maxNanos = nanos
+        }
+    }
+
+    /** Gets the profile recorded so far */
+    @JvmStatic
+    fun snapshot(): Snapshot {
+        val patches = synchronized(counters) { counters.map { it.key to it.value } }.flatMap { (hook, byMember) ->
+            val owner = owners[hook] ?: UNKNOWN
+            byMember.entries.map { (member, c) ->
+                synchronized(c) {
+                    PatchStats(owner, "${member.declaringClass.name}.${member.name}", c.type, c.calls, c.totalNanos, c.maxNanos)
+                }
+            }
+        }.sortedByDescending(PatchStats::totalNanos)
+
+        val owners = patches.groupBy(PatchStats::owner).map { (owner, stats) ->
+            OwnerStats(owner, stats.sumOf(PatchStats::calls), stats.sumOf(PatchStats::totalNanos))
+        }.sortedByDescending(OwnerStats::totalNanos)
+
+        return Snapshot(System.currentTimeMillis() - since, owners, patches)
+    }
+
+    /** Gets the profile recorded so far as JSON */
+    @JvmStatic
+    fun dump(): String = gsonPretty.toJson(snapshot())
+}
@@ -6,18 +6,24 @@
 
 package com.aliucord.patcher
 
-import de.robv.android.xposed.XC_MethodHook
+import de.robv.android.xposed.XC_MethodHook.MethodHookParam
+import de.robv.android.xposed.callbacks.XCallback
 import java.lang.reflect.Member
 
 /**
  * Runs the specified [callback] **instead of** the hooked [Member]
  *
+ * @param priority Priority of the hook, higher runs earlier, see [XCallback.PRIORITY_DEFAULT]
  * @property callback The callback to run instead of the method
  */
-class InsteadHook(val callback: Function1<MethodHookParam, Any?>) : XC_MethodHook() {
+class InsteadHook(priority: Int, val callback: Function1<MethodHookParam, Any?>) : FusableHook(priority) {
+    constructor(callback: Function1<MethodHookParam, Any?>) : this(XCallback.PRIORITY_DEFAULT, callback)
+
+    override val patchType get() = Patch.Type.INSTEAD
+
     override fun beforeHookedMethod(param: MethodHookParam) {
         try {
-            param.result = callback.invoke(param)
+            param.result = HookProfiler.profile(this, param, "instead") { callback.invoke(param) }
         } catch (th: Throwable) {
             Patcher.logger.error(
                 "Exception while replacing ${param.method.declaringClass.name}.${param.method.name}",
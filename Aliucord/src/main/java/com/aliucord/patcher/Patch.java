@@ -0,0 +1,75 @@
+/*
+ * This file is part of Aliucord, an Android Discord client mod.
+ * Copyright (c) 2024 Juby210 & Vendicated
+ * Licensed under the Open Software License version 3.0
+ */
+
+package com.aliucord.patcher;
+
+import androidx.annotation.NonNull;
+
+import java.lang.reflect.Member;
+import java.util.Collections;
+
+import de.robv.android.xposed.XC_MethodHook;
+
+/**
+ * A patch installed via {@link Patcher}. Running it removes the patch
+ */
+public final class Patch implements Runnable {
+    /** What a patch does with the patched member */
+    public enum Type {
+        /** Runs before the member, see {@link PreHook} */
+        BEFORE,
+        /** Runs after the member, see {@link Hook} */
+        AFTER,
+        /** Replaces the member, see {@link InsteadHook} */
+        INSTEAD,
+        /** A custom {@link XC_MethodHook}, which may do any of the above */
+        CUSTOM
+    }
+
+    /** The patched member */
+    @NonNull
+    public final Member member;
+    /** The hook of the patch */
+    @NonNull
+    public final XC_MethodHook hook;
+    /** Name of the plugin that installed the patch */
+    @NonNull
+    public final String owner;
+    @NonNull
+    public final Type type;
+
+    /** Set if the patch was hooked on its own */
+    final XC_MethodHook.Unhook unhook;
+    /** Set if the patch is part of a fused hook */
+    final FusedHook.Entry entry;
+
+    Patch(Member member, XC_MethodHook hook, String owner, XC_MethodHook.Unhook unhook, FusedHook.Entry entry) {
+        this.member = member;
+        this.hook = hook;
+        this.owner = owner;
+        this.unhook = unhook;
+        this.entry = entry;
+        type = hook instanceof FusableHook ? ((FusableHook) hook).getPatchType() : Type.CUSTOM;
+    }
+
+    /**
+     * Removes this patch. Does nothing if it was removed already
+     */
+    public void unpatch() {
+        Patcher.uninstall(Collections.singletonList(this));
+    }
+
+    @Override
+    public void run() {
+        unpatch();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return type + " patch of " + member.getDeclaringClass().getName() + "." + member.getName() + " by " + owner;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * This file is part of Aliucord, an Android Discord client mod.
+ * Copyright (c) 2024 Juby210 & Vendicated
+ * Licensed under the Open Software License version 3.0
+ */
+
+package com.aliucord.patcher;
+
+import androidx.annotation.NonNull;
+
+import java.lang.reflect.Member;
+
+import de.robv.android.xposed.XC_MethodHook;
+
+/**
+ * Describes a patch to install via {@link Patcher#install}
+ */
+public final class PatchSpec {
+    private final Member member;
+    private final Class<?> clazz;
+    private final String methodName;
+    private final Class<?>[] paramTypes;
+    @NonNull
+    public final XC_MethodHook hook;
+
+    /**
+     * @param member The member (method, constructor) to patch
+     * @param hook   MethodHook
+     */
+    public PatchSpec(@NonNull Member member, @NonNull XC_MethodHook hook) {
+        this.member = member;
+        this.hook = hook;
+        clazz = null;
+        methodName = null;
+        paramTypes = null;
+    }
+
+    /**
+     * @param clazz      Class to patch
+     * @param methodName The name of the method
+     * @param paramTypes The types of the parameters (e.g. int.class, String.class)
+     * @param hook       MethodHook
+     */
+    public PatchSpec(@NonNull Class<?> clazz, @NonNull String methodName, @NonNull Class<?>[] paramTypes, @NonNull XC_MethodHook hook) {
+        this.clazz = clazz;
+        this.methodName = methodName;
+        this.paramTypes = paramTypes;
+        this.hook = hook;
+        member = null;
+    }
+
+    /**
+     * Finds the member to patch
+     *
+     * @throws NoSuchMethodException No such method found
+     */
+    @NonNull
+    public Member resolve() throws NoSuchMethodException {
+        return member != null ? member : clazz.getDeclaredMethod(methodName, paramTypes);
+    }
+}
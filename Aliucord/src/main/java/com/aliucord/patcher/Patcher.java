@@ -6,27 +6,266 @@
 
 package com.aliucord.patcher;
 
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+
 import com.aliucord.Logger;
+import com.aliucord.PluginManager;
 
 import java.lang.reflect.Member;
-import java.util.Objects;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import dalvik.system.PathClassLoader;
 import de.robv.android.xposed.XC_MethodHook;
 import de.robv.android.xposed.XposedBridge;
 
 public class Patcher {
     public static final Logger logger = new Logger("Patcher");
     private static final ClassLoader cl = Objects.requireNonNull(Patcher.class.getClassLoader());
+    private static final AtomicInteger patchCount = new AtomicInteger();
+
+    /** Name patches of Aliucord itself are attributed to */
+    public static final String ALIUCORD = "Aliucord";
+
+    private static final Object registryLock = new Object();
+    /** Installed patches by member and by owner. Guarded by registryLock */
+    private static final Map<Member, Set<Patch>> patchesByMember = new HashMap<>();
+    private static final Map<String, Set<Patch>> patchesByOwner = new HashMap<>();
 
     /**
-     * Add a patch
+     * Gets the amount of patches added since startup, including ones that were removed again
+     *
+     * @return Patch count
+     */
+    public static int getPatchCount() {
+        return patchCount.get();
+    }
+
+    /**
+     * Add a patch. Prefer {@link #addFusedPatch(Member, XC_MethodHook)}: as removing the patch via the returned
+     * {@link XC_MethodHook.Unhook} can't be tracked, it isn't listed by {@link #getPatches(Member)} and
+     * {@link #getConflicts()}
      *
      * @param member The member (method, constructor) to patch
      * @param hook   MethodHook
      * @return Unhook
      */
     public static XC_MethodHook.Unhook addPatch(Member member, XC_MethodHook hook) {
-        return XposedBridge.hookMethod(member, hook);
+        var unhook = XposedBridge.hookMethod(member, hook);
+        patchCount.incrementAndGet();
+        HookProfiler.setOwner(hook, getOwner(hook));
+        return unhook;
+    }
+
+    /**
+     * Add a patch that shares a single Xposed hook with all other fusable patches of the member.
+     * This makes patched members cheaper to call, especially ones patched by several plugins.
+     * Hooks that aren't a {@link FusableHook} get their own Xposed hook
+     *
+     * @param member The member (method, constructor) to patch
+     * @param hook   MethodHook
+     * @return The patch, run it to remove the patch
+     */
+    public static Patch addFusedPatch(Member member, XC_MethodHook hook) {
+        return addFusedPatch(member, hook, getOwner(hook));
+    }
+
+    /**
+     * Add a patch that shares a single Xposed hook with all other fusable patches of the member.
+     * This makes patched members cheaper to call, especially ones patched by several plugins.
+     * Hooks that aren't a {@link FusableHook} get their own Xposed hook
+     *
+     * @param member The member (method, constructor) to patch
+     * @param hook   MethodHook
+     * @param owner  Name of the plugin adding the patch
+     * @return The patch, run it to remove the patch
+     */
+    public static Patch addFusedPatch(Member member, XC_MethodHook hook, String owner) {
+        Patch patch;
+        if (hook instanceof FusableHook && FusedHook.isSupported()) {
+            var entry = FusedHook.add(member, Collections.singletonList((FusableHook) hook)).get(0);
+            patch = new Patch(member, hook, owner, null, entry);
+        } else {
+            patch = new Patch(member, hook, owner, XposedBridge.hookMethod(member, hook), null);
+        }
+        patchCount.incrementAndGet();
+        register(patch);
+        return patch;
+    }
+
+    /**
+     * Installs several patches at once. All members are resolved before anything is patched and hooks of the same
+     * member are added in one go. If any patch fails, none of them are installed
+     *
+     * @param specs The patches
+     * @param owner Name of the plugin installing the patches
+     * @return The installed patches, in the same order as the specs
+     * @throws NoSuchMethodException A patched method wasn't found
+     */
+    public static List<Patch> install(List<PatchSpec> specs, String owner) throws NoSuchMethodException {
+        var members = new Member[specs.size()];
+        for (int i = 0; i < members.length; i++) members[i] = specs.get(i).resolve();
+
+        var patches = new Patch[members.length];
+        var fused = new LinkedHashMap<Member, List<Integer>>();
+        try {
+            for (int i = 0; i < members.length; i++) {
+                var hook = specs.get(i).hook;
+                if (hook instanceof FusableHook && FusedHook.isSupported())
+                    fused.computeIfAbsent(members[i], k -> new ArrayList<>()).add(i);
+                else
+                    patches[i] = new Patch(members[i], hook, owner, XposedBridge.hookMethod(members[i], hook), null);
+            }
+            for (var e : fused.entrySet()) {
+                var indices = e.getValue();
+                var hooks = new ArrayList<FusableHook>(indices.size());
+                for (int i : indices) hooks.add((FusableHook) specs.get(i).hook);
+                var entries = FusedHook.add(e.getKey(), hooks);
+                for (int j = 0; j < indices.size(); j++) {
+                    int i = indices.get(j);
+                    patches[i] = new Patch(members[i], hooks.get(j), owner, null, entries.get(j));
+                }
+            }
+        } catch (Throwable e) {
+            // Roll back what was hooked before the failure
+            for (var patch : patches) if (patch != null) {
+                if (patch.unhook != null) patch.unhook.unhook();
+                else FusedHook.remove(patch.member, Collections.singletonList(patch.entry));
+            }
+            throw e;
+        }
+
+        patchCount.addAndGet(patches.length);
+        var list = Arrays.asList(patches);
+        synchronized (registryLock) {
+            for (var patch : list) register(patch);
+        }
+        return list;
+    }
+
+    /**
+     * Removes several patches at once. Patches of the same member are removed in one go, and patches that were
+     * removed already are skipped
+     *
+     * @param patches The patches
+     */
+    public static void uninstall(Collection<Patch> patches) {
+        var fused = new HashMap<Member, List<FusedHook.Entry>>();
+        synchronized (registryLock) {
+            for (var patch : patches) {
+                if (!unregister(patch)) continue;
+                if (patch.unhook != null) patch.unhook.unhook();
+                else fused.computeIfAbsent(patch.member, k -> new ArrayList<>()).add(patch.entry);
+            }
+        }
+        for (var e : fused.entrySet()) FusedHook.remove(e.getKey(), e.getValue());
+    }
+
+    /**
+     * Gets all installed patches of a member. Patches added via {@link #addPatch(Member, XC_MethodHook)} aren't listed
+     *
+     * @param member The member
+     * @return The patches, in the order they were installed
+     */
+    public static List<Patch> getPatches(Member member) {
+        synchronized (registryLock) {
+            var patches = patchesByMember.get(member);
+            return patches == null ? Collections.emptyList() : new ArrayList<>(patches);
+        }
+    }
+
+    /**
+     * Gets all installed patches of a plugin. Patches added via {@link #addPatch(Member, XC_MethodHook)} aren't listed
+     *
+     * @param owner Name of the plugin
+     * @return The patches, in the order they were installed
+     */
+    public static List<Patch> getPatches(String owner) {
+        synchronized (registryLock) {
+            var patches = patchesByOwner.get(owner);
+            return patches == null ? Collections.emptyList() : new ArrayList<>(patches);
+        }
+    }
+
+    /**
+     * Gets all patched members
+     */
+    public static Set<Member> getPatchedMembers() {
+        synchronized (registryLock) {
+            return new HashSet<>(patchesByMember.keySet());
+        }
+    }
+
+    /**
+     * Members replaced by more than one {@link Patch.Type#INSTEAD} patch.
+     * Only the first one runs, as it skips the member and all remaining hooks
+     */
+    public static final class Conflict {
+        public final Member member;
+        /** The conflicting patches, in the order they were installed */
+        public final List<Patch> patches;
+
+        Conflict(Member member, List<Patch> patches) {
+            this.member = member;
+            this.patches = patches;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            var owners = new ArrayList<String>(patches.size());
+            for (var patch : patches) owners.add(patch.owner);
+            return member.getDeclaringClass().getName() + "." + member.getName() + " is replaced by " + TextUtils.join(", ", owners);
+        }
+    }
+
+    /**
+     * Finds members that are replaced by several patches. Patches added via {@link #addPatch(Member, XC_MethodHook)}
+     * aren't taken into account, as they aren't registered
+     *
+     * @return The conflicts, empty if there are none
+     */
+    public static List<Conflict> getConflicts() {
+        var conflicts = new ArrayList<Conflict>();
+        synchronized (registryLock) {
+            for (var e : patchesByMember.entrySet()) {
+                var instead = new ArrayList<Patch>();
+                for (var patch : e.getValue()) if (patch.type == Patch.Type.INSTEAD) instead.add(patch);
+                if (instead.size() > 1) conflicts.add(new Conflict(e.getKey(), instead));
+            }
+        }
+        return conflicts;
+    }
+
+    private static void register(Patch patch) {
+        synchronized (registryLock) {
+            patchesByMember.computeIfAbsent(patch.member, k -> new LinkedHashSet<>()).add(patch);
+            patchesByOwner.computeIfAbsent(patch.owner, k -> new LinkedHashSet<>()).add(patch);
+        }
+        HookProfiler.setOwner(patch.hook, patch.owner);
+    }
+
+    /** @return Whether the patch was registered */
+    private static boolean unregister(Patch patch) {
+        var byMember = patchesByMember.get(patch.member);
+        if (byMember == null || !byMember.remove(patch)) return false;
+        if (byMember.isEmpty()) patchesByMember.remove(patch.member);
+
+        var byOwner = patchesByOwner.get(patch.owner);
+        if (byOwner != null && byOwner.remove(patch) && byOwner.isEmpty()) patchesByOwner.remove(patch.owner);
+        return true;
+    }
+
+    /** Finds the plugin a hook belongs to via the class loader of its class */
+    private static String getOwner(XC_MethodHook hook) {
+        var loader = hook.getClass().getClassLoader();
+        if (loader instanceof PathClassLoader) {
+            var plugin = PluginManager.classLoaders.get(loader);
+            if (plugin != null) return plugin.getName();
+        }
+        return ALIUCORD;
     }
 
     /**
@@ -64,4 +303,42 @@ public class Patcher {
             return null;
         }
     }
+
+    /**
+     * Add a patch that shares a single Xposed hook with all other fusable patches of the method
+     *
+     * @param clazz      Class to patch
+     * @param methodName The name of the method
+     * @param paramTypes The types of the parameters (e.g. int.class, String.class)
+     * @param hook       MethodHook
+     * @return The patch, run it to remove the patch
+     * @see #addFusedPatch(Member, XC_MethodHook)
+     */
+    public static Patch addFusedPatch(Class<?> clazz, String methodName, Class<?>[] paramTypes, XC_MethodHook hook) {
+        try {
+            return addFusedPatch(clazz.getDeclaredMethod(methodName, paramTypes), hook);
+        } catch (Throwable e) {
+            logger.error(e);
+            return null;
+        }
+    }
+
+    /**
+     * Add a patch that shares a single Xposed hook with all other fusable patches of the method
+     *
+     * @param forClass   The full name of the class to patch (e.g. com.aliucord.patcher.Patcher)
+     * @param methodName The name of the method
+     * @param paramTypes The types of the parameters (e.g. int.class, String.class)
+     * @param hook       MethodHook
+     * @return The patch, run it to remove the patch
+     * @see #addFusedPatch(Member, XC_MethodHook)
+     */
+    public static Patch addFusedPatch(String forClass, String methodName, Class<?>[] paramTypes, XC_MethodHook hook) {
+        try {
+            return addFusedPatch(cl.loadClass(forClass), methodName, paramTypes, hook);
+        } catch (Throwable e) {
+            logger.error(e);
+            return null;
+        }
+    }
 }
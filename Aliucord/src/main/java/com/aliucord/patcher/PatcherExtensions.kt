@@ -14,10 +14,12 @@ private typealias InsteadHookCallback<T> = T.(XC_MethodHook.MethodHookParam) ->
  * @see [XC_MethodHook.beforeHookedMethod]
  */
 inline fun <reified T> PatcherAPI.instead(vararg paramTypes: Class<*>, crossinline callback: InsteadHookCallback<T>): Runnable =
-    patch(T::class.java.getDeclaredConstructor(*paramTypes), object : XC_MethodHook() {
-        override fun beforeHookedMethod(param: MethodHookParam) {
+    patch(T::class.java.getDeclaredConstructor(*paramTypes), object : FusableHook() {
+        override val patchType get() = Patch.Type.INSTEAD
+
+        override fun beforeHookedMethod(param: XC_MethodHook.MethodHookParam) {
             try {
-                param.result = callback(param.thisObject as T, param)
+                param.result = HookProfiler.profile(this, param, "instead") { callback(param.thisObject as T, param) }
             } catch (th: Throwable) {
                 logger.error("Exception while replacing constructor of ${param.method.declaringClass}", th)
             }
@@ -33,10 +35,12 @@ inline fun <reified T> PatcherAPI.instead(vararg paramTypes: Class<*>, crossinli
  * @see [XC_MethodHook.beforeHookedMethod]
  */
 inline fun <reified T> PatcherAPI.instead(methodName: String, vararg paramTypes: Class<*>, crossinline callback: InsteadHookCallback<T>): Runnable =
-    patch(T::class.java.getDeclaredMethod(methodName, *paramTypes), object : XC_MethodHook() {
-        override fun beforeHookedMethod(param: MethodHookParam) {
+    patch(T::class.java.getDeclaredMethod(methodName, *paramTypes), object : FusableHook() {
+        override val patchType get() = Patch.Type.INSTEAD
+
+        override fun beforeHookedMethod(param: XC_MethodHook.MethodHookParam) {
             try {
-                param.result = callback(param.thisObject as T, param)
+                param.result = HookProfiler.profile(this, param, "instead") { callback(param.thisObject as T, param) }
             } catch (th: Throwable) {
                 logger.error("Exception while replacing ${param.method.declaringClass.name}.${param.method.name}", th)
             }
@@ -51,10 +55,12 @@ inline fun <reified T> PatcherAPI.instead(methodName: String, vararg paramTypes:
  * @see [XC_MethodHook.beforeHookedMethod]
  */
 inline fun <reified T> PatcherAPI.before(vararg paramTypes: Class<*>, crossinline callback: HookCallback<T>): Runnable =
-    patch(T::class.java.getDeclaredConstructor(*paramTypes), object : XC_MethodHook() {
-        override fun beforeHookedMethod(param: MethodHookParam) {
+    patch(T::class.java.getDeclaredConstructor(*paramTypes), object : FusableHook() {
+        override val patchType get() = Patch.Type.BEFORE
+
+        override fun beforeHookedMethod(param: XC_MethodHook.MethodHookParam) {
             try {
-                callback(param.thisObject as T, param)
+                HookProfiler.profile(this, param, "before") { callback(param.thisObject as T, param) }
             } catch (th: Throwable) {
                 logger.error("Exception while pre-hooking constructor of ${param.method.declaringClass}", th)
             }
@@ -70,10 +76,12 @@ inline fun <reified T> PatcherAPI.before(vararg paramTypes: Class<*>, crossinlin
  * @see [XC_MethodHook.beforeHookedMethod]
  */
 inline fun <reified T> PatcherAPI.before(methodName: String, vararg paramTypes: Class<*>, crossinline callback: HookCallback<T>): Runnable =
-    patch(T::class.java.getDeclaredMethod(methodName, *paramTypes), object : XC_MethodHook() {
-        override fun beforeHookedMethod(param: MethodHookParam) {
+    patch(T::class.java.getDeclaredMethod(methodName, *paramTypes), object : FusableHook() {
+        override val patchType get() = Patch.Type.BEFORE
+
+        override fun beforeHookedMethod(param: XC_MethodHook.MethodHookParam) {
             try {
-                callback(param.thisObject as T, param)
+                HookProfiler.profile(this, param, "before") { callback(param.thisObject as T, param) }
             } catch (th: Throwable) {
                 logger.error("Exception while pre-hooking ${param.method.declaringClass.name}.${param.method.name}", th)
             }
@@ -88,10 +96,12 @@ inline fun <reified T> PatcherAPI.before(methodName: String, vararg paramTypes:
  * @see [XC_MethodHook.afterHookedMethod]
  */
 inline fun <reified T> PatcherAPI.after(vararg paramTypes: Class<*>, crossinline callback: HookCallback<T>): Runnable =
-    patch(T::class.java.getDeclaredConstructor(*paramTypes), object : XC_MethodHook() {
-        override fun afterHookedMethod(param: MethodHookParam) {
+    patch(T::class.java.getDeclaredConstructor(*paramTypes), object : FusableHook() {
+        override val patchType get() = Patch.Type.AFTER
+
+        override fun afterHookedMethod(param: XC_MethodHook.MethodHookParam) {
             try {
-                callback(param.thisObject as T, param)
+                HookProfiler.profile(this, param, "after") { callback(param.thisObject as T, param) }
             } catch (th: Throwable) {
                 logger.error("Exception while hooking constructor of ${param.method.declaringClass}", th)
             }
@@ -107,10 +117,12 @@ inline fun <reified T> PatcherAPI.after(vararg paramTypes: Class<*>, crossinline
  * @see [XC_MethodHook.afterHookedMethod]
  */
 inline fun <reified T> PatcherAPI.after(methodName: String, vararg paramTypes: Class<*>, crossinline callback: HookCallback<T>): Runnable =
-    patch(T::class.java.getDeclaredMethod(methodName, *paramTypes), object : XC_MethodHook() {
-        override fun afterHookedMethod(param: MethodHookParam) {
+    patch(T::class.java.getDeclaredMethod(methodName, *paramTypes), object : FusableHook() {
+        override val patchType get() = Patch.Type.AFTER
+
+        override fun afterHookedMethod(param: XC_MethodHook.MethodHookParam) {
             try {
-                callback(param.thisObject as T, param)
+                HookProfiler.profile(this, param, "after") { callback(param.thisObject as T, param) }
             } catch (th: Throwable) {
                 logger.error("Exception while hooking ${param.method.declaringClass.name}.${param.method.name}", th)
             }
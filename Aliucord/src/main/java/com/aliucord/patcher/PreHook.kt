@@ -6,19 +6,25 @@
 
 package com.aliucord.patcher
 
-import de.robv.android.xposed.XC_MethodHook
+import de.robv.android.xposed.XC_MethodHook.MethodHookParam
+import de.robv.android.xposed.callbacks.XCallback
 import rx.functions.Action1
 import java.lang.reflect.Member
 
 /**
  * Runs the specified [callback] **before** the hooked [Member]
  *
+ * @param priority Priority of the hook, higher runs earlier, see [XCallback.PRIORITY_DEFAULT]
  * @property callback The callback to run before the method
  */
-class PreHook(val callback: Action1<MethodHookParam>) : XC_MethodHook() {
+class PreHook(priority: Int, val callback: Action1<MethodHookParam>) : FusableHook(priority) {
+    constructor(callback: Action1<MethodHookParam>) : this(XCallback.PRIORITY_DEFAULT, callback)
+
+    override val patchType get() = Patch.Type.BEFORE
+
     override fun beforeHookedMethod(param: MethodHookParam) {
         try {
-            callback.call(param)
+            HookProfiler.profile(this, param, "before") { callback.call(param) }
         } catch (th: Throwable) {
             Patcher.logger.error(
                 "Exception while pre-hooking ${param.method.declaringClass.name}.${param.method.name}",
@@ -55,6 +55,12 @@ class AliucordPage : SettingsPage() {
             )
         }
 
+        addDivider(ctx)
+        addHeader(ctx, "Diagnostics")
+        addPageLink(ctx, "Startup Profiler", R.e.ic_history_white_24dp, StartupProfilerPage::class.java)
+        addPageLink(ctx, "Gateway Metrics", R.e.ic_audit_logs_24dp, GatewayMetricsPage::class.java)
+        addPageLink(ctx, "Hook Profiler", R.e.ic_behavior_24dp, HookProfilerPage::class.java)
+
         addDivider(ctx)
         addHeader(ctx, "Links")
         addLink(ctx, "Source Code", R.e.ic_account_github_white_24dp) {
@@ -78,6 +84,19 @@ class AliucordPage : SettingsPage() {
         }
     }
 
+    private fun addPageLink(ctx: Context, text: String, @DrawableRes drawable: Int, page: Class<out SettingsPage>) {
+        TextView(ctx, null, 0, R.i.UiKit_Settings_Item_Icon).run {
+            this.text = text
+            val drawableStart = ContextCompat.getDrawable(ctx, drawable)?.run {
+                mutate()
+                Utils.tintToTheme(this)
+            }
+            setCompoundDrawablesRelativeWithIntrinsicBounds(drawableStart, null, null, null)
+            setOnClickListener { Utils.openPage(it.context, page) }
+            linearLayout.addView(this)
+        }
+    }
+
     private fun addLink(ctx: Context, text: String, @DrawableRes drawable: Int, action: View.OnClickListener) {
         TextView(ctx, null, 0, R.i.UiKit_Settings_Item_Icon).run {
             this.text = text
@@ -0,0 +1,107 @@
+/*
+ * This file is part of Aliucord, an Android Discord client mod.
+ * Copyright (c) 2024 Juby210 & Vendicated
+ * Licensed under the Open Software License version 3.0
+ */
+
+package com.aliucord.settings
+
+import android.annotation.SuppressLint
+import android.view.View
+import com.aliucord.Logger
+import com.aliucord.Utils
+import com.aliucord.api.GatewayMetrics
+import com.aliucord.api.GatewayRecorder
+import com.aliucord.fragments.SettingsPage
+import com.discord.views.CheckedSetting
+import com.lytefast.flexinput.R
+import java.io.IOException
+import java.util.*
+
+class GatewayMetricsPage : SettingsPage() {
+    @SuppressLint("SetTextI18n")
+    override fun onViewBound(view: View) {
+        super.onViewBound(view)
+        setActionBarTitle("Gateway Metrics")
+
+        val context = view.context
+
+        Utils.createCheckedSetting(
+            context,
+            CheckedSetting.ViewType.SWITCH,
+            "Record gateway metrics",
+            "Records traffic per event and time spent in plugin listeners. Slightly slows down handling of gateway events"
+        ).run {
+            isChecked = GatewayMetrics.enabled
+            setOnCheckedListener {
+                GatewayMetrics.enabled = it
+                reRender()
+            }
+            linearLayout.addView(this)
+        }
+
+        Utils.createCheckedSetting(
+            context,
+            CheckedSetting.ViewType.SWITCH,
+            "Record gateway frames",
+            "Saves all received frames to ${GatewayRecorder.RECORDING_PATH} for replaying with GatewayReplayer. " +
+                "The recording contains your messages, only share it with care"
+        ).run {
+            isChecked = GatewayRecorder.isRecording
+            setOnCheckedListener {
+                if (!it) {
+                    Utils.showToast("Recorded ${GatewayRecorder.stop()} frames")
+                    return@setOnCheckedListener
+                }
+                try {
+                    GatewayRecorder.start()
+                } catch (e: IOException) {
+                    Logger("GatewayRecorder").errorToast("Failed to start recording", e)
+                    isChecked = false
+                }
+            }
+            linearLayout.addView(this)
+        }
+
+        val snapshot = GatewayMetrics.snapshot()
+        if (!GatewayMetrics.enabled && snapshot.events.isEmpty()) return
+
+        addHeaderButton("Copy JSON", R.e.ic_copy_24dp) {
+            Utils.setClipboard("Gateway Metrics", GatewayMetrics.dump())
+            Utils.showToast("Copied to clipboard")
+            true
+        }
+        addHeaderButton("Reset", R.e.ic_delete_24dp) {
+            GatewayMetrics.reset()
+            reRender()
+            true
+        }
+
+        val seconds = snapshot.durationMillis / 1000.0
+        setActionBarSubtitle(String.format(Locale.ROOT, "Recorded for %.0fs", seconds))
+
+        addDivider(context)
+        addHeader(context, "Plugin Listeners")
+        if (snapshot.plugins.isEmpty()) addText(context, "No listener calls recorded")
+        snapshot.plugins.forEach { plugin ->
+            val breakdown = plugin.events.joinToString("\n") {
+                "${it.event}: ${it.calls} calls, ${formatNanos(it.totalNanos)} (max ${formatNanos(it.maxNanos)})"
+            }
+            addText(context, "${plugin.plugin}: ${formatNanos(plugin.totalNanos)}\n$breakdown")
+        }
+
+        addDivider(context)
+        addHeader(context, "Events")
+        snapshot.events.forEach {
+            val rate = if (seconds > 0) String.format(Locale.ROOT, "%.1f/s", it.frames / seconds) else "-"
+            val parse = if (it.parses > 0) ", parsed ${it.parses}x in ${formatNanos(it.parseNanos)}" else ""
+            addText(context, "${it.name}: ${it.frames} frames ($rate), ${formatBytes(it.bytes)}$parse")
+        }
+    }
+
+    private fun formatBytes(bytes: Long) = when {
+        bytes >= 1024 * 1024 -> String.format(Locale.ROOT, "%.1fMB", bytes / (1024.0 * 1024))
+        bytes >= 1024 -> String.format(Locale.ROOT, "%.1fKB", bytes / 1024.0)
+        else -> "${bytes}B"
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * This file is part of Aliucord, an Android Discord client mod.
+ * Copyright (c) 2024 Juby210 & Vendicated
+ * Licensed under the Open Software License version 3.0
+ */
+
+package com.aliucord.settings
+
+import android.annotation.SuppressLint
+import android.view.View
+import com.aliucord.Utils
+import com.aliucord.fragments.SettingsPage
+import com.aliucord.patcher.HookProfiler
+import com.discord.views.CheckedSetting
+import com.lytefast.flexinput.R
+import java.util.*
+
+class HookProfilerPage : SettingsPage() {
+    @SuppressLint("SetTextI18n")
+    override fun onViewBound(view: View) {
+        super.onViewBound(view)
+        setActionBarTitle("Hook Profiler")
+
+        val context = view.context
+
+        Utils.createCheckedSetting(
+            context,
+            CheckedSetting.ViewType.SWITCH,
+            "Profile patches",
+            "Records how often each patch runs and how long it takes. Slightly slows down all patched methods"
+        ).run {
+            isChecked = HookProfiler.enabled
+            setOnCheckedListener {
+                HookProfiler.enabled = it
+                reRender()
+            }
+            linearLayout.addView(this)
+        }
+
+        val snapshot = HookProfiler.snapshot()
+        if (!HookProfiler.enabled && snapshot.patches.isEmpty()) return
+
+        addHeaderButton("Copy JSON", R.e.ic_copy_24dp) {
+            Utils.setClipboard("Hook Profile", HookProfiler.dump())
+            Utils.showToast("Copied to clipboard")
+            true
+        }
+        addHeaderButton("Reset", R.e.ic_delete_24dp) {
+            HookProfiler.reset()
+            reRender()
+            true
+        }
+
+        setActionBarSubtitle(String.format(Locale.ROOT, "Recorded for %.0fs", snapshot.durationMillis / 1000.0))
+
+        addDivider(context)
+        addHeader(context, "Plugins")
+        if (snapshot.owners.isEmpty()) addText(context, "No patch calls recorded")
+        snapshot.owners.forEach {
+            addText(context, "${it.owner}: ${formatNanos(it.totalNanos, 3)} in ${it.calls} calls")
+        }
+
+        addDivider(context)
+        addHeader(context, "Patches")
+        snapshot.patches.forEach {
+            val average = if (it.calls > 0) it.totalNanos / it.calls else 0L
+            addText(
+                context,
+                "${it.member} (${it.type}, ${it.owner})\n" +
+                    "${it.calls} calls, ${formatNanos(it.totalNanos, 3)} (avg ${formatNanos(average, 3)}, max ${formatNanos(it.maxNanos, 3)})"
+            )
+        }
+    }
+}
@@ -227,6 +227,8 @@ public class Plugins extends SettingsPage {
 
         public void onSettingsClick(int position) throws Throwable {
             Plugin p = data.get(position);
+            var triggers = p.getManifest().activationTriggers;
+            if (triggers != null && triggers.settings) PluginManager.activatePlugin(p.getName());
             if (p.settingsTab.type == Plugin.SettingsTab.Type.PAGE && p.settingsTab.page != null) {
                 Fragment page = p.settingsTab.args != null
                     ? ReflectUtils.invokeConstructorWithArgs(p.settingsTab.page, p.settingsTab.args)
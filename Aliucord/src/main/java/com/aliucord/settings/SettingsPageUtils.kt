@@ -0,0 +1,27 @@
+/*
+ * This file is part of Aliucord, an Android Discord client mod.
+ * Copyright (c) 2024 Juby210 & Vendicated
+ * Licensed under the Open Software License version 3.0
+ */
+
+package com.aliucord.settings
+
+import android.content.Context
+import android.widget.TextView
+import androidx.core.content.res.ResourcesCompat
+import com.aliucord.Constants
+import com.aliucord.fragments.SettingsPage
+import com.lytefast.flexinput.R
+import java.util.*
+
+/** Adds a line of sub text, like the descriptions of settings items */
+internal fun SettingsPage.addText(context: Context, text: String) {
+    TextView(context, null, 0, R.i.UiKit_Settings_Item_SubText).run {
+        this.text = text
+        typeface = ResourcesCompat.getFont(context, Constants.Fonts.whitney_medium)
+        addView(this)
+    }
+}
+
+/** Formats a duration in milliseconds with the specified amount of decimals */
+internal fun formatNanos(nanos: Long, decimals: Int = 2): String = String.format(Locale.ROOT, "%.${decimals}fms", nanos / 1_000_000.0)
@@ -0,0 +1,86 @@
+/*
+ * This file is part of Aliucord, an Android Discord client mod.
+ * Copyright (c) 2024 Juby210 & Vendicated
+ * Licensed under the Open Software License version 3.0
+ */
+
+package com.aliucord.settings
+
+import android.annotation.SuppressLint
+import android.content.Context
+import android.view.View
+import com.aliucord.*
+import com.aliucord.StartupProfiler.SpanData
+import com.aliucord.fragments.SettingsPage
+import com.aliucord.utils.GsonUtils.fromJson
+import com.aliucord.utils.GsonUtils.gson
+import com.lytefast.flexinput.R
+import java.io.File
+
+class StartupProfilerPage : SettingsPage() {
+    override fun onViewBound(view: View) {
+        super.onViewBound(view)
+        setActionBarTitle("Startup Profiler")
+
+        val context = view.context
+        val file = File(StartupProfiler.TRACE_PATH)
+        // Reading and parsing the trace of a previous launch can take a while, so don't block the main thread with it
+        cancelOnDestroy(Utils.threadPool.submit(Runnable {
+            val trace = StartupProfiler.trace ?: readTrace(file)
+            Utils.mainThread.post { if (isAdded) render(context, file, trace) }
+        }))
+    }
+
+    private fun readTrace(file: File) = try {
+        if (file.exists()) gson.fromJson(file.readText(), StartupProfiler.Trace::class.java) else null
+    } catch (e: Throwable) {
+        Main.logger.error("Failed to read startup trace", e)
+        null
+    }
+
+    @SuppressLint("SetTextI18n")
+    private fun render(context: Context, file: File, trace: StartupProfiler.Trace?) {
+        if (trace == null) {
+            addText(context, "No startup trace recorded yet")
+            return
+        }
+
+        addHeaderButton("Copy Trace", R.e.ic_copy_24dp) {
+            Utils.threadPool.execute {
+                if (file.exists()) {
+                    val text = file.readText()
+                    Utils.mainThread.post { Utils.setClipboard("Startup Trace", text) }
+                    Utils.showToast("Copied to clipboard")
+                }
+            }
+            true
+        }
+
+        setActionBarSubtitle("Total: ${formatNanos(trace.totalNanos)}")
+
+        addHeader(context, "Phases")
+        trace.spans.filter { it.plugin == null }.forEach {
+            addText(context, "${it.name}: ${formatNanos(it.durationNanos)}${formatPatches(it.patches)}")
+        }
+
+        addDivider(context)
+        addHeader(context, "Plugins")
+        trace.spans
+            .filter { it.plugin != null }
+            .groupBy { it.plugin!! }
+            .entries
+            .sortedByDescending { (_, spans) -> spans.sumOf(SpanData::durationNanos) }
+            .forEach { (plugin, spans) ->
+                val total = spans.sumOf(SpanData::durationNanos)
+                val patches = spans.sumOf(SpanData::patches)
+                val breakdown = spans.joinToString { "${it.name} ${formatNanos(it.durationNanos)}" }
+                addText(context, "$plugin: ${formatNanos(total)}${formatPatches(patches)}\n$breakdown")
+            }
+    }
+
+    private fun formatPatches(patches: Int) = when (patches) {
+        0 -> ""
+        1 -> " (1 patch)"
+        else -> " ($patches patches)"
+    }
+}
@@ -18,7 +18,7 @@ import com.google.gson.reflect.TypeToken;
 import java.io.File;
 import java.lang.reflect.Type;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 
 import kotlin.Unit;
 
@@ -48,9 +48,24 @@ public class PluginUpdater {
 
     private static final Type resType = TypeToken.getParameterized(Map.class, String.class, UpdateInfo.class).getType();
 
+    /** Update data requests that are currently running, so concurrent lookups of the same url share one request */
+    private static final Map<String, CompletableFuture<Map<String, UpdateInfo>>> inFlight = new ConcurrentHashMap<>();
+    /** Bounded pool used to fetch update data and download updates concurrently */
+    private static final ExecutorService fetchPool;
+
+    static {
+        var pool = new ThreadPoolExecutor(4, 4, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        pool.allowCoreThreadTimeOut(true);
+        fetchPool = pool;
+    }
+
     public static void checkUpdates(boolean notify) {
         updates.clear();
-        for (Map.Entry<String, Plugin> plugin : PluginManager.plugins.entrySet()) {
+        var plugins = new ArrayList<>(PluginManager.plugins.entrySet());
+        var failedUrls = prefetchUpdateData(plugins);
+        for (Map.Entry<String, Plugin> plugin : plugins) {
+            var updateUrl = plugin.getValue().getManifest().updateUrl;
+            if (updateUrl != null && failedUrls.contains(updateUrl)) continue;
             if (checkPluginUpdate(plugin.getValue()))
                 updates.add(plugin.getKey());
         }
@@ -120,18 +135,8 @@ public class PluginUpdater {
         if (manifest.updateUrl == null || manifest.updateUrl.equals("")) return null;
         String name = plugin.getName();
 
-        CachedData cached = cache.get(manifest.updateUrl);
-        if (cached != null && cached.time > System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(30)) {
-            UpdateInfo updateInfo = cached.data.get(name);
-            UpdateInfo defaultInfo = cached.data.get("default");
-            if (updateInfo == null) return defaultInfo;
-            addDefaultInfo(updateInfo, defaultInfo);
-            return updateInfo;
-        }
-
-        Map<String, UpdateInfo> res = Http.simpleJsonGet(manifest.updateUrl, resType);
+        Map<String, UpdateInfo> res = fetchUpdateData(manifest.updateUrl);
         if (res == null) return null;
-        cache.put(manifest.updateUrl, new CachedData(res));
         UpdateInfo updateInfo = res.get(name);
         UpdateInfo defaultInfo = res.get("default");
         if (updateInfo == null) return defaultInfo;
@@ -139,13 +144,96 @@ public class PluginUpdater {
         return updateInfo;
     }
 
+    /**
+     * Gets the update data of the specified url, either from the cache or by fetching it.
+     * Concurrent calls for the same url share a single request.
+     */
+    private static Map<String, UpdateInfo> fetchUpdateData(String url) throws Exception {
+        CachedData cached = cache.get(url);
+        if (isFresh(cached)) return cached.data;
+
+        var future = new CompletableFuture<Map<String, UpdateInfo>>();
+        var running = inFlight.putIfAbsent(url, future);
+        if (running != null) {
+            try {
+                return running.get();
+            } catch (ExecutionException e) {
+                var cause = e.getCause();
+                throw cause instanceof Exception ? (Exception) cause : e;
+            }
+        }
+
+        Map<String, UpdateInfo> res = null;
+        Exception error = null;
+        try {
+            // Another request for this url might have finished between checking the cache and registering ours
+            cached = cache.get(url);
+            if (isFresh(cached)) {
+                res = cached.data;
+            } else {
+                try (var req = new Http.Request(url).setUseCache(true)) {
+                    res = req.execute().json(resType);
+                }
+                if (res != null) cache.put(url, new CachedData(res));
+            }
+            return res;
+        } catch (Exception e) {
+            error = e;
+            throw e;
+        } finally {
+            inFlight.remove(url, future);
+            if (error != null) future.completeExceptionally(error);
+            else future.complete(res);
+        }
+    }
+
+    private static boolean isFresh(CachedData cached) {
+        return cached != null && cached.time > System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(30);
+    }
+
+    /**
+     * Concurrently fetches the update data of all distinct update urls of the specified plugins
+     *
+     * @return The urls that could not be fetched. Failures are already logged
+     */
+    private static Set<String> prefetchUpdateData(List<Map.Entry<String, Plugin>> plugins) {
+        var urls = new LinkedHashSet<String>();
+        for (var plugin : plugins) {
+            var updateUrl = plugin.getValue().getManifest().updateUrl;
+            if (updateUrl != null && !updateUrl.equals("")) urls.add(updateUrl);
+        }
+
+        var fetches = new LinkedHashMap<String, Future<Map<String, UpdateInfo>>>();
+        for (var url : urls) fetches.put(url, fetchPool.submit(() -> fetchUpdateData(url)));
+
+        var failed = new HashSet<String>();
+        for (var fetch : fetches.entrySet()) {
+            try {
+                fetch.getValue().get();
+            } catch (Throwable e) {
+                logger.error("Failed to fetch update data from " + fetch.getKey(), e instanceof ExecutionException ? e.getCause() : e);
+                failed.add(fetch.getKey());
+            }
+        }
+        return failed;
+    }
+
     public static int updateAll() {
+        // Download all updates concurrently, but remount the plugins in order
+        var plugins = new ArrayList<>(updates);
+        var downloads = new ArrayList<Future<UpdateInfo>>(plugins.size());
+        for (String plugin : plugins) downloads.add(fetchPool.submit(() -> download(plugin)));
+
         int updateCount = 0;
-        for (String plugin : updates) {
+        for (int i = 0; i < plugins.size(); i++) {
+            var plugin = plugins.get(i);
             try {
-                if (update(plugin) && updateCount != -1) updateCount++;
+                var updateInfo = downloads.get(i).get();
+                if (updateInfo == null) continue;
+                remount(plugin, updateInfo);
+                if (updateCount != -1) updateCount++;
             } catch (Throwable t) {
-                logger.error("Error while updating plugin " + plugin, t);
+                logger.error("Error while updating plugin " + plugin, t instanceof ExecutionException ? t.getCause() : t);
                 updateCount = -1;
             }
         }
@@ -155,12 +243,24 @@ public class PluginUpdater {
     }
 
     public static boolean update(String plugin) throws Throwable {
+        var updateInfo = download(plugin);
+        if (updateInfo == null) return false;
+        remount(plugin, updateInfo);
+        return true;
+    }
+
+    /**
+     * Downloads the latest version of a plugin
+     *
+     * @return The {@link UpdateInfo} of the downloaded version, or null if there is no update info for this plugin
+     */
+    private static UpdateInfo download(String plugin) throws Exception {
         var p = PluginManager.plugins.get(plugin);
         if (p == null)
             throw new NoSuchElementException("No such plugin: " + plugin);
 
         var updateInfo = getUpdateInfo(p);
-        if (updateInfo == null) return false;
+        if (updateInfo == null) return null;
 
         var url = updateInfo.build.replace("%s", plugin);
 
@@ -170,7 +270,10 @@ public class PluginUpdater {
                     updateInfo.sha1sum
             );
         }
+        return updateInfo;
+    }
 
+    private static void remount(String plugin, UpdateInfo updateInfo) {
         if (PluginManager.isPluginEnabled(plugin)) {
             Utils.mainThread.post(() -> {
                 PluginManager.remountPlugin(plugin);
@@ -179,7 +282,6 @@ public class PluginUpdater {
             });
         }
         updated.put(plugin, updateInfo.version);
-        return true;
     }
 
     private static void addDefaultInfo(UpdateInfo updateInfo, UpdateInfo defaultInfo) {
@@ -8,6 +8,7 @@ package com.aliucord.utils
 
 import com.discord.models.domain.Model
 import com.google.gson.Gson
+import com.google.gson.stream.JsonReader
 import java.io.Reader
 import java.lang.reflect.Type
 import b.a.b.a as TypeAdapterRegistrar
@@ -84,6 +85,17 @@ object GsonUtils {
     @Deprecated("Use kt extension for Gson", ReplaceWith("gson.fromJson(json, type)"))
     fun <T> fromJson(json: String?, type: Type?): T = gson.fromJson(json, type)
 
+    /**
+     * Deserializes the next JSON value of a [JsonReader] into the specified object.
+     * Unlike the other overloads, this does not require the whole JSON to be in memory and leaves the reader open,
+     * so it can be used to read large documents value by value
+     * @param reader The reader to read the next value from
+     * @param type The type of the object to deserialize the JSON into
+     * @return Deserialized JSON
+     */
+    @JvmStatic
+    fun <T> Gson.fromJson(reader: JsonReader, type: Type?): T = c(reader, type) // fromJson(JsonReader, Type)
+
     /**
      * Serializes an Object to JSON
      * @param obj The object to serialize
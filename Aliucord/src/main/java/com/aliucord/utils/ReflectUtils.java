@@ -13,8 +13,14 @@ import androidx.annotation.Nullable;
 import com.aliucord.Main;
 
 import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
-/** Utility class to ease Reflection */
+/**
+ * Utility class to ease Reflection.
+ * Looked up fields, methods and constructors are cached per class loader, so repeated calls don't have to look them up again.
+ */
 @SuppressLint("DiscouragedPrivateApi")
 @SuppressWarnings("unchecked")
 public final class ReflectUtils {
@@ -22,6 +28,118 @@ public final class ReflectUtils {
     private static Method unsafeAllocIns;
     private static Field accessFlagsFields;
 
+    private static final int FIELD = 0;
+    private static final int METHOD = 1;
+    private static final int CONSTRUCTOR = 2;
+
+    /**
+     * Key of a cached member: its kind, class, name and parameter types. Fields have no parameter types.
+     * The kind is needed as a field and a method without parameters may share their name
+     */
+    private static final class MemberKey {
+        final int kind;
+        final Class<?> clazz;
+        final String name;
+        final Class<?>[] params;
+        final int hash;
+
+        MemberKey(int kind, Class<?> clazz, String name, Class<?>[] params) {
+            this.kind = kind;
+            this.clazz = clazz;
+            this.name = name;
+            this.params = params;
+            hash = 31 * (31 * (31 * kind + clazz.hashCode()) + name.hashCode()) + Arrays.hashCode(params);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof MemberKey)) return false;
+            var k = (MemberKey) o;
+            return kind == k.kind && clazz == k.clazz && name.equals(k.name) && Arrays.equals(params, k.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final Class<?>[] NO_PARAMS = new Class<?>[0];
+
+    /**
+     * Cached members by the class loader of their class. The cached members strongly reference their class and through
+     * it the class loader, so entries have to be dropped with {@link #clearCache(ClassLoader)}, which PluginManager does
+     * when a plugin is unloaded. Only then can the class loader be collected
+     */
+    private static final Map<ClassLoader, Map<MemberKey, AccessibleObject>> cache = new ConcurrentHashMap<>();
+    /** Cached members of classes loaded by the boot class loader, which is null and never unloaded */
+    private static final Map<MemberKey, AccessibleObject> bootCache = new ConcurrentHashMap<>();
+    // Striped, so threads looking up members at the same time don't contend on a single counter
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+
+    private static Map<MemberKey, AccessibleObject> getCache(Class<?> clazz) {
+        var loader = clazz.getClassLoader();
+        if (loader == null) return bootCache;
+        var members = cache.get(loader);
+        return members != null ? members : cache.computeIfAbsent(loader, l -> new ConcurrentHashMap<>());
+    }
+
+    private static Field findField(Class<?> clazz, String name) throws NoSuchFieldException {
+        var members = getCache(clazz);
+        var key = new MemberKey(FIELD, clazz, name, NO_PARAMS);
+        var field = (Field) members.get(key);
+        if (field != null) {
+            hits.increment();
+            return field;
+        }
+        misses.increment();
+        field = clazz.getDeclaredField(name);
+        field.setAccessible(true);
+        members.put(key, field);
+        return field;
+    }
+
+    private static Class<?>[] getArgTypes(Object[] args) {
+        if (args.length == 0) return NO_PARAMS;
+        Class<?>[] argTypes = new Class<?>[args.length];
+        for (int i = 0; i < args.length; i++) {
+            argTypes[i] = args[i].getClass();
+        }
+        return argTypes;
+    }
+
+    /**
+     * Gets the amount of lookups that were served from the cache
+     */
+    public static long getCacheHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the amount of lookups that had to look up the member
+     */
+    public static long getCacheMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Drops all cached members of classes loaded by the specified class loader
+     *
+     * @param loader The class loader, for example of an unloaded plugin
+     */
+    public static void clearCache(@NonNull ClassLoader loader) {
+        cache.remove(loader);
+    }
+
+    /**
+     * Drops all cached members
+     */
+    public static void clearCache() {
+        cache.clear();
+        bootCache.clear();
+    }
+
     /**
      * Creates new class instance without using a constructor
      * @param clazz Class
@@ -49,13 +167,19 @@ public final class ReflectUtils {
      * @throws NoSuchMethodException No such constructor found
      */
     public static <T> Constructor<T> getConstructorByArgs(@NonNull Class<T> clazz, Object... args) throws NoSuchMethodException {
-        Class<?>[] argTypes = new Class<?>[args.length];
-        for (int i = 0; i < args.length; i++) {
-            argTypes[i] = args[i].getClass();
+        var argTypes = getArgTypes(args);
+        var members = getCache(clazz);
+        var key = new MemberKey(CONSTRUCTOR, clazz, "<init>", argTypes);
+        var c = (Constructor<T>) members.get(key);
+        if (c != null) {
+            hits.increment();
+            return c;
         }
+        misses.increment();
 
-        Constructor<T> c = clazz.getDeclaredConstructor(argTypes);
+        c = clazz.getDeclaredConstructor(argTypes);
         c.setAccessible(true);
+        members.put(key, c);
         return c;
     }
 
@@ -77,8 +201,6 @@ public final class ReflectUtils {
 
     /**
      * Attempts to find and invoke the method matching the specified arguments
-     * Please note that this does not cache the lookup result, so if you need to call this many times
-     * you should do it manually and cache the {@link Method} to improve performance drastically
      *
      * @param clazz The class
      * @param methodName The name of the method
@@ -88,20 +210,24 @@ public final class ReflectUtils {
      */
     @NonNull
     public static Method getMethodByArgs(@NonNull Class<?> clazz, @NonNull String methodName, Object... args) throws NoSuchMethodException {
-        Class<?>[] argTypes = new Class<?>[args.length];
-        for (int i = 0; i < args.length; i++) {
-            argTypes[i] = args[i].getClass();
+        var argTypes = getArgTypes(args);
+        var members = getCache(clazz);
+        var key = new MemberKey(METHOD, clazz, methodName, argTypes);
+        var m = (Method) members.get(key);
+        if (m != null) {
+            hits.increment();
+            return m;
         }
+        misses.increment();
 
-        Method m = clazz.getDeclaredMethod(methodName, argTypes);
+        m = clazz.getDeclaredMethod(methodName, argTypes);
         m.setAccessible(true);
+        members.put(key, m);
         return m;
     }
 
     /**
      * Attempts to find and invoke the method matching the specified arguments
-     * Please note that this does not cache the lookup result, so if you need to call this many times
-     * you should do it manually and cache the {@link Method} to improve performance drastically
      *
      * @param clazz The class holding the method
      * @param instance The instance of the class to invoke the method on or null to invoke static method
@@ -119,8 +245,6 @@ public final class ReflectUtils {
 
     /**
      * Attempts to find and invoke the method matching the specified arguments
-     * Please note that this does not cache the lookup result, so if you need to call this many times
-     * you should do it manually and cache the {@link Method} to improve performance drastically
      *
      * @param instance The instance of the class to invoke the method on
      * @param methodName The name of the method
@@ -137,8 +261,6 @@ public final class ReflectUtils {
 
     /**
      * Gets a field declared in the class.
-     * Please note that this does not cache the lookup result, so if you need to call this many times
-     * you should do it manually and cache the {@link Field} to improve performance drastically
      *
      * @param instance  Instance of the class where the field is located.
      * @param fieldName Name of the field.
@@ -153,8 +275,6 @@ public final class ReflectUtils {
 
     /**
      * Gets a field declared in the class.
-     * Please note that this does not cache the lookup result, so if you need to call this many times
-     * you should do it manually and cache the {@link Field} to improve performance drastically
      *
      * @param clazz     {@link Class} where the field is located.
      * @param instance  Instance of the <code>clazz</code> or null to get static field
@@ -165,15 +285,11 @@ public final class ReflectUtils {
      */
     @Nullable
     public static Object getField(@NonNull Class<?> clazz, @Nullable Object instance, @NonNull String fieldName) throws NoSuchFieldException, IllegalAccessException {
-        Field field = clazz.getDeclaredField(fieldName);
-        field.setAccessible(true);
-        return field.get(instance);
+        return findField(clazz, fieldName).get(instance);
     }
 
     /**
      * Override a field of a class.
-     * Please note that this does not cache the lookup result, so if you need to call this many times
-     * you should do it manually and cache the {@link Field} to improve performance drastically
      *
      * @param instance  Instance of the class where the field is located.
      * @param fieldName Name of the field.
@@ -187,8 +303,6 @@ public final class ReflectUtils {
 
     /**
      * Override a field of a class.
-     * Please note that this does not cache the lookup result, so if you need to call this many times
-     * you should do it manually and cache the {@link Field} to improve performance drastically
      *
      * @param clazz     {@link Class} where the field is located.
      * @param instance  Instance of the <code>clazz</code> or null to set static field.
@@ -198,16 +312,12 @@ public final class ReflectUtils {
      * @throws IllegalAccessException If the field is inaccessible. Shouldn't happen.
      */
     public static void setField(@NonNull Class<?> clazz, @Nullable Object instance, @NonNull String fieldName, @Nullable Object v) throws NoSuchFieldException, IllegalAccessException {
-        Field field = clazz.getDeclaredField(fieldName);
-        field.setAccessible(true);
-        field.set(instance, v);
+        findField(clazz, fieldName).set(instance, v);
     }
 
     /**
      * Override a final field of a class.
      * WARNING: If this field is of a primitive type, setting it may have no effect as the compiler will inline final primitives.
-     * Please note that this does not cache the lookup result, so if you need to call this many times
-     * you should do it manually and cache the {@link Field} to improve performance drastically
      *
      * @param instance  Instance of the <code>clazz</code> or null to set static field.
      * @param fieldName Name of the field.
@@ -222,8 +332,6 @@ public final class ReflectUtils {
     /**
      * Override a final field of a class.
      * WARNING: If this field is of a primitive type, setting it may have no effect as the compiler will inline final primitives.
-     * Please note that this does not cache the lookup result, so if you need to call this many times
-     * you should do it manually and cache the {@link Field} to improve performance drastically
      *
      * @param clazz     {@link Class} where the field is located.
      * @param instance  Instance of the <code>clazz</code> or null to set static field.
@@ -246,9 +354,8 @@ public final class ReflectUtils {
             accessFlagsFields.setAccessible(true);
         }
 
-        var field = clazz.getDeclaredField(fieldName);
-        field.setAccessible(true);
-        accessFlagsFields.set(field, field.getModifiers() & ~Modifier.FINAL);
+        var field = findField(clazz, fieldName);
+        if (Modifier.isFinal(field.getModifiers())) accessFlagsFields.set(field, field.getModifiers() & ~Modifier.FINAL);
         field.set(instance, v);
     }
 }
@@ -0,0 +1,97 @@
+/*
+ * This file is part of Aliucord, an Android Discord client mod.
+ * Copyright (c) 2024 Juby210 & Vendicated
+ * Licensed under the Open Software License version 3.0
+ */
+
+package com.aliucord.utils
+
+import android.annotation.SuppressLint
+import android.os.Build
+import java.lang.invoke.MethodHandles
+import java.lang.reflect.Field
+import java.lang.reflect.Method
+import java.util.Locale
+
+/**
+ * Compares the time a field read, field write and method call take with [ReflectUtils], with a [Field][java.lang.reflect.Field]
+ * looked up on every call, with a cached one as [lazyField] gives and, on Android 8+, with MethodHandles.
+ * Run it on the device the results should apply to, as ART and the JVM differ a lot here.
+ */
+object ReflectionBenchmark {
+    /**
+     * Result of a benchmarked operation
+     *
+     * @param name Name of the way the operation was done
+     * @param nanosPerOp Average time of the operation
+     */
+    data class Result(val name: String, val nanosPerOp: Double) {
+        override fun toString() = String.format(Locale.ROOT, "%-32s %8.1fns", name, nanosPerOp)
+    }
+
+    @Suppress("unused")
+    private class Target {
+        private var value: Any? = "value"
+        private var count = 0
+
+        // Boxed, as ReflectUtils looks up methods by the classes of the arguments
+        private fun add(amount: Int?): Int {
+            count += amount!!
+            return count
+        }
+    }
+
+    /**
+     * Runs the benchmark, blocking until done
+     *
+     * @param iterations How often to run each operation
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun run(iterations: Int = 1_000_000): List<Result> {
+        val target = Target()
+        val clazz = Target::class.java
+        val results = ArrayList<Result>()
+
+        fun measure(name: String, op: () -> Unit) {
+            // Warm up so the JIT sees the code before it's measured
+            repeat(iterations / 10) { op() }
+            val start = System.nanoTime()
+            repeat(iterations) { op() }
+            results.add(Result(name, (System.nanoTime() - start).toDouble() / iterations))
+        }
+
+        measure("get: lookup per call") { clazz.getDeclaredField("value").apply { isAccessible = true }[target] }
+        measure("get: ReflectUtils") { ReflectUtils.getField(target, "value") }
+        measure("set: lookup per call") { clazz.getDeclaredField("value").apply { isAccessible = true }[target] = "value" }
+        measure("set: ReflectUtils") { ReflectUtils.setField(target, "value", "value") }
+        measure("call: lookup per call") {
+            clazz.getDeclaredMethod("add", Int::class.javaObjectType).apply { isAccessible = true }.invoke(target, 1)
+        }
+        measure("call: ReflectUtils") { ReflectUtils.invokeMethod(target, "add", 1) }
+
+        val value = clazz.getDeclaredField("value").apply { isAccessible = true }
+        val count = clazz.getDeclaredField("count").apply { isAccessible = true }
+        val add = clazz.getDeclaredMethod("add", Int::class.javaObjectType).apply { isAccessible = true }
+        measure("get: cached Field") { value[target] }
+        measure("set: cached Field") { value[target] = "value" }
+        measure("getInt: cached Field") { count.getInt(target) }
+        measure("call: cached Method") { add.invoke(target, 1) }
+
+        if (Build.VERSION.SDK_INT >= 26) measureMethodHandles(target, value, add, ::measure)
+
+        return results
+    }
+
+    // D8 rejects invoke and invokeExact below API 26, so handles can only be called through invokeWithArguments
+    @SuppressLint("NewApi")
+    private fun measureMethodHandles(target: Any, value: Field, add: Method, measure: (String, () -> Unit) -> Unit) {
+        val lookup = MethodHandles.lookup()
+        val getter = lookup.unreflectGetter(value)
+        val setter = lookup.unreflectSetter(value)
+        val invoker = lookup.unreflect(add)
+        measure("get: MethodHandle") { getter.invokeWithArguments(target) }
+        measure("set: MethodHandle") { setter.invokeWithArguments(target, "value") }
+        measure("call: MethodHandle") { invoker.invokeWithArguments(target, 1) }
+    }
+}
@@ -35,6 +35,11 @@ private const val ALIUCORD_FROM_STORAGE_KEY = "AC_from_storage"
 
 private var unhook: XC_MethodHook.Unhook? = null
 
+/** [System.nanoTime] at which adding Aliucord to the classpath started, read by Aliucord's startup profiler */
+var addDexToClasspathStart = 0L
+/** [System.nanoTime] at which adding Aliucord to the classpath finished, read by Aliucord's startup profiler */
+var addDexToClasspathEnd = 0L
+
 fun init() {
     try {
         Log.d(LOG_TAG, "Hooking AppActivity.onCreate...")
@@ -106,7 +111,9 @@ private fun init(appActivity: AppActivity) {
         }
 
         Logger.d("Adding Aliucord to the classpath...")
+        addDexToClasspathStart = System.nanoTime()
         addDexToClasspath(dexFile, appActivity.classLoader)
+        addDexToClasspathEnd = System.nanoTime()
         val c = Class.forName("com.aliucord.Main")
         val preInit = c.getDeclaredMethod("preInit", AppActivity::class.java)
         val init = c.getDeclaredMethod("init", AppActivity::class.java)